@@ -0,0 +1,95 @@
+package com.mbelkhode.drawingfun;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures how long the main activity takes from launch until its first frame is drawn. The
+ * activity is started by the activity manager with am start -W, which reports the time to the
+ * first frame as TotalTime, so the palette and the other work deferred past the first frame are
+ * not counted. The times are logged, and the test checks that no canvas bitmap was allocated to
+ * show the first frame. The activity also calls reportFullyDrawn on its first frame, which logs
+ * a Fully drawn line from the activity manager.
+ *
+ * The test runs in the process of the app, so these are warm starts of a new activity in a
+ * running process. A cold start has to kill the process first, which would kill the test too, so
+ * it is measured from the host instead:
+ *
+ *    adb shell am start -S -W -n com.mbelkhode.drawingfun/.MainActivity
+ *
+ * Needs the shell commands of UiAutomation, added in Lollipop; on older versions it only logs.
+ */
+public class StartupBenchmarkTest extends android.test.InstrumentationTestCase {
+
+    private static final String LOG_TAG = StartupBenchmarkTest.class.getSimpleName();
+    private static final int RUNS = 5;
+    private static final long LAUNCH_TIMEOUT_MS = 10000;
+    private static final Pattern TOTAL_TIME = Pattern.compile("TotalTime: (\\d+)");
+
+    public void testTimeToFirstFrame() throws Exception {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            Log.i(LOG_TAG, "testTimeToFirstFrame: needs Lollipop to run shell commands");
+            return;
+        }
+        Instrumentation instrumentation = getInstrumentation();
+        String component = instrumentation.getTargetContext().getPackageName() + "/"
+                + MainActivity.class.getName();
+
+        long[] times = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            Instrumentation.ActivityMonitor monitor =
+                    instrumentation.addMonitor(MainActivity.class.getName(), null, false);
+            String output = runShellCommand("am start -W -n " + component);
+            Activity activity = instrumentation.waitForMonitorWithTimeout(monitor,
+                    LAUNCH_TIMEOUT_MS);
+            instrumentation.removeMonitor(monitor);
+            assertNotNull("MainActivity was not started: " + output, activity);
+
+            Matcher totalTime = TOTAL_TIME.matcher(output);
+            assertTrue("No launch time in: " + output, totalTime.find());
+            times[i] = Long.parseLong(totalTime.group(1));
+
+            DrawingView drawingView = (DrawingView) activity.findViewById(R.id.DrawingView);
+            assertNotNull(drawingView);
+            assertFalse(drawingView.hasBitmap());
+
+            activity.finish();
+            instrumentation.waitForIdleSync();
+        }
+
+        long first = times[0];
+        Arrays.sort(times);
+        Log.i(LOG_TAG, "Time to first frame: first " + first + " ms, median " + times[RUNS / 2]
+                + " ms, best " + times[0] + " ms, worst " + times[RUNS - 1] + " ms");
+    }
+
+    /**
+     * Runs a shell command and returns what it printed once it is done.
+     */
+    private String runShellCommand(String command) throws IOException {
+        ParcelFileDescriptor descriptor =
+                getInstrumentation().getUiAutomation().executeShellCommand(command);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ParcelFileDescriptor.AutoCloseInputStream(descriptor)));
+        try {
+            StringBuilder output = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                output.append(line).append('\n');
+            }
+            return output.toString();
+        } finally {
+            reader.close();
+        }
+    }
+}
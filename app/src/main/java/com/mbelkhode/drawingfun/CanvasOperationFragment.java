@@ -0,0 +1,77 @@
+package com.mbelkhode.drawingfun;
+
+import android.app.Activity;
+import android.app.AlertDialog;
+import android.app.Dialog;
+import android.app.DialogFragment;
+import android.content.DialogInterface;
+import android.graphics.Color;
+import android.graphics.drawable.ColorDrawable;
+import android.os.Bundle;
+
+/**
+ * This dialog fragment pops up the list of whole canvas operations (rotate, flip, scale and
+ * filters) and lets the user choose one. The invoking activity implements the callback
+ * onCanvasOperationSelected to get back the chosen operation, one of the OPERATION constants.
+ */
+
+public class CanvasOperationFragment extends DialogFragment {
+
+    // In the same order as R.array.canvas_operations
+    public static final int OPERATION_ROTATE = 0;
+    public static final int OPERATION_FLIP_HORIZONTAL = 1;
+    public static final int OPERATION_FLIP_VERTICAL = 2;
+    public static final int OPERATION_HALF_SIZE = 3;
+    public static final int OPERATION_DOUBLE_SIZE = 4;
+    public static final int OPERATION_GRAYSCALE = 5;
+    public static final int OPERATION_INVERT = 6;
+    public static final int OPERATION_BLUR = 7;
+
+    private OnCanvasOperationSelectedListener mListener;
+
+    /**
+     * Instantiates a new fragment and returns to the caller.
+     */
+    public static CanvasOperationFragment newInstance() {
+        return new CanvasOperationFragment();
+    }
+
+    /**
+     * The interface to be implemented by the associated activity to get back the chosen operation.
+     */
+    public interface OnCanvasOperationSelectedListener {
+        void onCanvasOperationSelected(int operation);
+    }
+
+    @Override
+    public void onAttach(Activity activity) {
+        super.onAttach(activity);
+        try {
+            mListener = (OnCanvasOperationSelectedListener) activity;
+        } catch (ClassCastException e) {
+            throw new ClassCastException(activity.toString() + " must implement OnCanvasOperationSelectedListener");
+        }
+    }
+
+    @Override
+    public Dialog onCreateDialog(Bundle savedInstanceState) {
+
+        AlertDialog.Builder alertDialogBuilder = new AlertDialog.Builder(getActivity());
+        alertDialogBuilder.setTitle(R.string.canvas_operations);
+        alertDialogBuilder.setItems(R.array.canvas_operations, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                dialog.dismiss();
+                mListener.onCanvasOperationSelected(which);
+            }
+        });
+
+        return alertDialogBuilder.create();
+    }
+
+    @Override
+    public void onStart() {
+        super.onStart();
+        getDialog().getWindow().setBackgroundDrawable(new ColorDrawable(Color.WHITE));
+    }
+}
@@ -0,0 +1,74 @@
+package com.mbelkhode.drawingfun;
+
+import java.util.BitSet;
+
+/**
+ * Keeps track of which tiles of the drawing have changed since the project was last saved.
+ * The drawing is cut into square tiles of ProjectFile.TILE_SIZE pixels, numbered row by row
+ * from the top left corner.
+ */
+public class DirtyTiles {
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mColumns;
+    private final int mRows;
+    private final BitSet mDirty;
+
+    public DirtyTiles(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        mColumns = ProjectFile.tileCount(width);
+        mRows = ProjectFile.tileCount(height);
+        mDirty = new BitSet(mColumns * mRows);
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getTileCount() {
+        return mColumns * mRows;
+    }
+
+    /**
+     * Marks every tile touched by the given area as dirty. The area may reach outside the
+     * drawing.
+     */
+    public void mark(float left, float top, float right, float bottom) {
+        int firstColumn = clamp((int) Math.floor(left) / ProjectFile.TILE_SIZE, mColumns);
+        int lastColumn = clamp((int) Math.ceil(right) / ProjectFile.TILE_SIZE, mColumns);
+        int firstRow = clamp((int) Math.floor(top) / ProjectFile.TILE_SIZE, mRows);
+        int lastRow = clamp((int) Math.ceil(bottom) / ProjectFile.TILE_SIZE, mRows);
+        for (int row = firstRow; row <= lastRow; row++) {
+            mDirty.set(row * mColumns + firstColumn, row * mColumns + lastColumn + 1);
+        }
+    }
+
+    public void markAll() {
+        mDirty.set(0, getTileCount());
+    }
+
+    public void clear() {
+        mDirty.clear();
+    }
+
+    /**
+     * Returns the first dirty tile at or after the given tile, or -1 if there is none.
+     */
+    public int nextDirty(int fromTile) {
+        return mDirty.nextSetBit(fromTile);
+    }
+
+    public boolean isEmpty() {
+        return mDirty.isEmpty();
+    }
+
+    private static int clamp(int value, int count) {
+        return Math.min(Math.max(value, 0), count - 1);
+    }
+}
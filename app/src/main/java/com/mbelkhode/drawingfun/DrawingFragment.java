@@ -7,6 +7,8 @@ import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.Toast;
+import java.io.File;
 
 /**
  * A fragment with a view where the user can start drawing. Supports the following 5 apis to help
@@ -17,11 +19,23 @@ import android.view.ViewGroup;
  *    3. setPainColor - Sets the paint color to the selected one
  *    4. eraseAllAndSetDefaultColor - Erases the whole canvas and sets the color to default
  *    5. saveDrawing - Saves the bitmap as an image to the gallery.
+ *    6. saveProject - Saves the drawing as a project that can be edited again.
+ *    7. loadProject - Opens a saved project.
+ *    8. applyCanvasOperation - Rotates, flips, scales or filters the whole canvas.
+ *    9. setShapeMode - Sets the line, rectangle or ellipse mode to draw shapes
+ *   10. exportHighResolution - Exports the drawing as a larger png to the gallery.
+ *   11. setStrokeEraseMode - Sets the mode where touching a stroke erases all of it
  *
  */
 public class DrawingFragment extends Fragment {
 
     private static final String LOG_TAG = DrawingFragment.class.getSimpleName();
+    private static final int BLUR_RADIUS = 4;
+    private static final float PRINT_DPI = 300;
+    // An A4 page
+    private static final float PRINT_PAGE_LONG_INCHES = 11.69f;
+    private static final float PRINT_PAGE_SHORT_INCHES = 8.27f;
+    private static final String CANVAS_TOO_LARGE_TOAST_MSG = "Your drawing cannot get any larger";
 
     public DrawingFragment() {
     }
@@ -58,6 +72,33 @@ public class DrawingFragment extends Fragment {
         }
     }
 
+    /**
+     * This function sets the fragment or view in the stroke erase mode where a user can erase
+     * whole strokes by touching them.
+     */
+    public void setStrokeEraseMode() {
+        DrawingView drawingView = getDrawingView();
+        if (drawingView != null) {
+            drawingView.setStrokeEraseMode();
+        } else {
+            Log.e(LOG_TAG, "setStrokeEraseMode: Drawing view is null");
+        }
+    }
+
+    /**
+     * This function sets the fragment or view in a shape mode where a user can draw lines,
+     * rectangles or ellipses by dragging from one corner to the other.
+     * @param shapeType One of Stroke.TYPE_LINE, TYPE_RECTANGLE or TYPE_ELLIPSE
+     */
+    public void setShapeMode(byte shapeType) {
+        DrawingView drawingView = getDrawingView();
+        if (drawingView != null) {
+            drawingView.setShapeMode(shapeType);
+        } else {
+            Log.e(LOG_TAG, "setShapeMode: Drawing view is null");
+        }
+    }
+
     /**
      * This function changes the color of the paint or the brush.
      * @param color The color that the user has selected
@@ -95,6 +136,133 @@ public class DrawingFragment extends Fragment {
         }
     }
 
+    /**
+     * This function will save the drawing as a project that can be opened and edited again, and
+     * display a toast to the user.
+     */
+    public void saveProject() {
+        DrawingView drawingView = getDrawingView();
+        if (drawingView != null) {
+            drawingView.saveProject();
+        } else {
+            Log.e(LOG_TAG, "saveProject: Drawing view is null");
+        }
+    }
+
+    /**
+     * This function will replace the drawing with a saved project.
+     * @param file The project file to open
+     */
+    public void loadProject(File file) {
+        DrawingView drawingView = getDrawingView();
+        if (drawingView != null) {
+            drawingView.loadProject(file);
+        } else {
+            Log.e(LOG_TAG, "loadProject: Drawing view is null");
+        }
+    }
+
+    /**
+     * This function applies a whole canvas operation in the background. Doubling the size is
+     * refused once a side would be larger than DrawingView.MAX_CANVAS_SIZE.
+     * @param operation One of the CanvasOperationFragment OPERATION constants
+     */
+    public void applyCanvasOperation(int operation) {
+        DrawingView drawingView = getDrawingView();
+        if (drawingView == null) {
+            Log.e(LOG_TAG, "applyCanvasOperation: Drawing view is null");
+            return;
+        }
+        int width = drawingView.getDrawingWidth();
+        int height = drawingView.getDrawingHeight();
+        switch (operation) {
+            case CanvasOperationFragment.OPERATION_ROTATE:
+                drawingView.applyCanvasOperation(RasterOperation.ROTATE_90);
+                break;
+            case CanvasOperationFragment.OPERATION_FLIP_HORIZONTAL:
+                drawingView.applyCanvasOperation(RasterOperation.FLIP_HORIZONTAL);
+                break;
+            case CanvasOperationFragment.OPERATION_FLIP_VERTICAL:
+                drawingView.applyCanvasOperation(RasterOperation.FLIP_VERTICAL);
+                break;
+            case CanvasOperationFragment.OPERATION_HALF_SIZE:
+                drawingView.applyCanvasOperation(RasterOperation.scale(
+                        Math.max(1, width / 2), Math.max(1, height / 2)));
+                break;
+            case CanvasOperationFragment.OPERATION_DOUBLE_SIZE:
+                if (Math.max(width, height) * 2 > DrawingView.MAX_CANVAS_SIZE) {
+                    Log.e(LOG_TAG, "applyCanvasOperation: " + width + "x" + height
+                            + " is too large to double");
+                    Toast.makeText(getActivity(), CANVAS_TOO_LARGE_TOAST_MSG,
+                            Toast.LENGTH_SHORT).show();
+                    break;
+                }
+                drawingView.applyCanvasOperation(RasterOperation.scale(width * 2, height * 2));
+                break;
+            case CanvasOperationFragment.OPERATION_GRAYSCALE:
+                drawingView.applyCanvasOperation(RasterOperation.GRAYSCALE);
+                break;
+            case CanvasOperationFragment.OPERATION_INVERT:
+                drawingView.applyCanvasOperation(RasterOperation.INVERT);
+                break;
+            case CanvasOperationFragment.OPERATION_BLUR:
+                drawingView.applyCanvasOperation(RasterOperation.blur(BLUR_RADIUS));
+                break;
+            default:
+                Log.e(LOG_TAG, "applyCanvasOperation: unknown operation " + operation);
+        }
+    }
+
+    /**
+     * This function exports the drawing as a png at a larger size in the background. For print
+     * quality, the scale is chosen so that the image fills an A4 page printed at PRINT_DPI, but
+     * never below the size of the drawing itself.
+     * @param scale One of the ExportScaleFragment SCALE constants
+     */
+    public void exportHighResolution(int scale) {
+        DrawingView drawingView = getDrawingView();
+        if (drawingView == null) {
+            Log.e(LOG_TAG, "exportHighResolution: Drawing view is null");
+            return;
+        }
+        switch (scale) {
+            case ExportScaleFragment.SCALE_DOUBLE:
+                drawingView.exportHighResolution(2);
+                break;
+            case ExportScaleFragment.SCALE_QUADRUPLE:
+                drawingView.exportHighResolution(4);
+                break;
+            case ExportScaleFragment.SCALE_PRINT:
+                int width = drawingView.getDrawingWidth();
+                int height = drawingView.getDrawingHeight();
+                float pageScale = Math.min(
+                        PRINT_PAGE_LONG_INCHES * PRINT_DPI / Math.max(width, height),
+                        PRINT_PAGE_SHORT_INCHES * PRINT_DPI / Math.min(width, height));
+                drawingView.exportHighResolution(Math.max(1, pageScale));
+                break;
+            default:
+                Log.e(LOG_TAG, "exportHighResolution: unknown scale " + scale);
+        }
+    }
+
+    /**
+     * This function turns the drawing metrics and their overlay on or off. When they are turned
+     * off, the recorded metrics are written to the log first.
+     * @param enabled true to start recording and show the overlay, false to stop
+     */
+    public void setMetricsEnabled(boolean enabled) {
+        DrawingView drawingView = getDrawingView();
+        if (drawingView != null) {
+            if (!enabled && drawingView.isMetricsEnabled()) {
+                Log.i(LOG_TAG, drawingView.dumpMetrics());
+            }
+            drawingView.setMetricsEnabled(enabled);
+            drawingView.setMetricsOverlayEnabled(enabled);
+        } else {
+            Log.e(LOG_TAG, "setMetricsEnabled: Drawing view is null");
+        }
+    }
+
     /**
      * This function gets the drawing view from the root view.
      */
@@ -0,0 +1,114 @@
+package com.mbelkhode.drawingfun;
+
+import java.util.Locale;
+
+/**
+ * Collects the hot path timings of the DrawingView. Keeps 3 histograms
+ *
+ *    1. Input to frame - From the time of the oldest touch event that has not been drawn yet to
+ *           the end of the onDraw that draws it. This is the closest the view can get to the
+ *           input to pixel latency as the render thread and the display add a bit more.
+ *    2. Draw - The time spent in onDraw.
+ *    3. Commit - The time spent in touchUp drawing the finished stroke onto the bitmap.
+ *
+ * Recording does not allocate. Only dump and the overlay lines allocate, and those are meant to
+ * be called rarely.
+ */
+public class DrawingMetrics {
+
+    private static final double[] PERCENTILES = {50.0, 90.0, 99.0};
+
+    private final LatencyHistogram mInputToFrame = new LatencyHistogram();
+    private final LatencyHistogram mDraw = new LatencyHistogram();
+    private final LatencyHistogram mCommit = new LatencyHistogram();
+    private long mPendingInputNanos;
+
+    /**
+     * Remembers the time of a touch event so that the next frame can record its latency. Only the
+     * oldest event since the last frame is kept, so the latency is the worst one of the frame.
+     *
+     * @param eventTimeNanos The event time on the System.nanoTime clock
+     */
+    public void recordInput(long eventTimeNanos) {
+        if (mPendingInputNanos == 0) {
+            mPendingInputNanos = eventTimeNanos;
+        }
+    }
+
+    /**
+     * Records one onDraw call and, if a touch event was waiting for it, the input to frame latency.
+     */
+    public void recordDraw(long startNanos, long endNanos) {
+        mDraw.recordValue(endNanos - startNanos);
+        if (mPendingInputNanos != 0) {
+            mInputToFrame.recordValue(endNanos - mPendingInputNanos);
+            mPendingInputNanos = 0;
+        }
+    }
+
+    /**
+     * Records the cost of committing a stroke to the bitmap in touchUp.
+     */
+    public void recordCommit(long startNanos, long endNanos) {
+        mCommit.recordValue(endNanos - startNanos);
+    }
+
+    public LatencyHistogram getInputToFrame() {
+        return mInputToFrame;
+    }
+
+    public LatencyHistogram getDraw() {
+        return mDraw;
+    }
+
+    public LatencyHistogram getCommit() {
+        return mCommit;
+    }
+
+    /**
+     * Clears all the histograms.
+     */
+    public void reset() {
+        mInputToFrame.reset();
+        mDraw.reset();
+        mCommit.reset();
+        mPendingInputNanos = 0;
+    }
+
+    /**
+     * Returns one line per histogram with the count, percentiles and max in milliseconds.
+     */
+    public String[] getSummaryLines() {
+        return new String[] {
+                summaryLine("input", mInputToFrame),
+                summaryLine("draw", mDraw),
+                summaryLine("commit", mCommit)
+        };
+    }
+
+    /**
+     * Returns a multi line summary of all the histograms, suitable for logging.
+     */
+    public String dump() {
+        StringBuilder builder = new StringBuilder("Drawing metrics (ms)");
+        for (String line : getSummaryLines()) {
+            builder.append('\n').append(line);
+        }
+        return builder.toString();
+    }
+
+    private static String summaryLine(String name, LatencyHistogram histogram) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.US, "%-6s n=%d", name, histogram.getTotalCount()));
+        for (double percentile : PERCENTILES) {
+            builder.append(String.format(Locale.US, " p%d=%.2f", (int) percentile,
+                    toMillis(histogram.getValueAtPercentile(percentile))));
+        }
+        builder.append(String.format(Locale.US, " max=%.2f", toMillis(histogram.getMaxValue())));
+        return builder.toString();
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1000000.0;
+    }
+}
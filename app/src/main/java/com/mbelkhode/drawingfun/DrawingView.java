@@ -8,18 +8,38 @@ import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Path;
 import android.graphics.PixelFormat;
-import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Typeface;
+import android.media.MediaScannerConnection;
+import android.os.Environment;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.provider.MediaStore;
 import android.support.annotation.NonNull;
 import android.util.AttributeSet;
+import android.util.SparseArray;
 import android.view.Gravity;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.WindowManager;
 import android.widget.ImageView;
+import android.util.Log;
 import android.widget.Toast;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A view where the user can start drawing. Supports the following 5 apis to help with the drawing.
@@ -30,6 +50,37 @@ import java.util.Date;
  *    4. eraseAllAndSetDefaultColor - Erases the whole canvas and sets the color to default
  *    5. saveDrawing - Saves the bitmap as an image to the gallery.
  *
+ * setShapeMode switches from freehand drawing to a line, rectangle or ellipse tool. While the
+ * finger moves, the shape is only drawn on top of the bitmap in onDraw and just the area of the
+ * old and new shape is invalidated; the shape is drawn onto the bitmap on ACTION_UP.
+ *
+ * Every finished stroke is also kept as a Stroke so that the drawing can be saved as a project
+ * (see ProjectFile) with saveProject and opened again with loadProject. Saving only writes the
+ * tiles and strokes that changed since the last save or load. Both run on a background thread.
+ *
+ * applyCanvasOperation runs a whole canvas RasterOperation (rotate, flip, scale, filters) on the
+ * RasterOperationEngine and swaps the result in on the UI thread in one step. Touches are ignored
+ * while it runs. The result also becomes the base bitmap: the pixels under the strokes drawn
+ * after it, since the strokes before it are baked into it.
+ *
+ * exportHighResolution draws the strokes again at a larger scale with a HighResExporter and
+ * streams the result to a png in the pictures directory, one band at a time.
+ *
+ * setStrokeEraseMode switches to a stroke eraser that removes whole strokes under the finger. The
+ * strokes are kept in a StrokeIndex so that the ones near the finger, and the ones to draw again
+ * where a stroke was removed, are found without going through every stroke. Only the area of the
+ * removed strokes is drawn again, from the base bitmap and the strokes that cross it.
+ *
+ * To start quickly, no bitmap is allocated when the view is laid out. The white background of
+ * the view stands in for an empty canvas until the first stroke, save, export or canvas
+ * operation calls ensureBitmap. Once the app is idle after the first layout, the drag cursors
+ * are decoded and the stroke paint is drawn once off screen so that the first touch does not pay
+ * for either.
+ *
+ * For debugging, setMetricsEnabled turns on the hot path timings (see DrawingMetrics),
+ * setMetricsOverlayEnabled draws their percentiles on top of the drawing and dumpMetrics returns
+ * them as text. When the metrics are off the only cost is a null check per event and per frame.
+ *
  * Uses touch event to draw and also drag a brush or erase view when the user moves the finger.
  * Supports the following 3 functions to support dragging the view.
  *
@@ -41,8 +92,19 @@ import java.util.Date;
 
 public class DrawingView extends View {
 
+    private static final String LOG_TAG = DrawingView.class.getSimpleName();
+
+    // Saves, loads and canvas operations run one after the other so that they never see a half
+    // written project or a half swapped canvas
+    private static final ExecutorService sBackgroundExecutor = Executors.newSingleThreadExecutor();
+    private static RasterOperationEngine sRasterEngine;
+
     private final Context mContext;
+    // Null until something is drawn, see ensureBitmap
     private Bitmap mBitmap;
+    private int mDrawingWidth;
+    private int mDrawingHeight;
+    private Bitmap mBaseBitmap;
     private Canvas mCanvas;
     private final Path mPath;
     private final Paint mBitmapPaint;
@@ -51,14 +113,65 @@ public class DrawingView extends View {
     private WindowManager mWindowManager;
     private int mLastSelectedColor;
     private int mDragResource = R.drawable.ic_paint_brush;
+    private final SparseArray<Bitmap> mDragBitmaps = new SparseArray<>();
     private float mX, mY;
+    private DrawingMetrics mMetrics;
+    private Paint mMetricsPaint;
+    private String[] mMetricsLines;
+    private long mMetricsLinesNanos;
+    private final List<Stroke> mStrokes = new ArrayList<>();
+    private StrokeIndex mStrokeIndex = new StrokeIndex(0, 0);
+    // Reused for the strokes found by StrokeIndex queries, so that erasing does not allocate
+    private final List<Stroke> mFoundStrokes = new ArrayList<>();
+    // The number of strokes marked as erased by the current eraser gesture, still in mStrokes
+    // until it ends
+    private int mErasedCount;
+    private final RectF mErasedBounds = new RectF();
+    private final Rect mRedrawBounds = new Rect();
+    private boolean mStrokeEraseMode;
+    private Stroke mCurrentStroke;
+    private byte mStrokeType = Stroke.TYPE_FREEHAND;
+    private final StrokeRenderer mStrokeRenderer = new StrokeRenderer();
+    private final Rect mShapeBounds = new Rect();
+    private DirtyTiles mDirtyTiles;
+    private File mProjectFile;
+    private int mSavedStrokeCount;
+    private boolean mSavedStrokesRemoved;
+    private boolean mProjectStale;
+    private boolean mOperationRunning;
+    // Set on a touch down while an operation runs, until the gesture ends
+    private boolean mIgnoringGesture;
+
+    // Runs once when the UI thread first becomes idle after the view is attached
+    private final MessageQueue.IdleHandler mPrewarmHandler = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            prewarm();
+            return false;
+        }
+    };
 
     private static final int SCALED_IMAGE_SIZE = 100;
+    private static final int PREWARM_SIZE = 8;
     private static final float TOUCH_TOLERANCE = 4;
+    // The largest side of a bitmap that still fits in a texture on most devices
+    public static final int MAX_CANVAS_SIZE = 8192;
     private static final int DEFAULT_STROKE_WIDTH = 12;
     private static final int DEFAULT_ERASE_WIDTH = 20;
+    private static final float STROKE_ERASER_RADIUS = 16;
+    private static final float METRICS_TEXT_SIZE = 28;
+    private static final long METRICS_OVERLAY_REFRESH_NANOS = 500000000L;
 
     private static final String SAVE_TOAST_MSG = "Saved your drawing...";
+    private static final String PROJECT_SAVED_TOAST_MSG = "Saved your project...";
+    private static final String PROJECT_SAVE_FAILED_TOAST_MSG = "Could not save your project";
+    private static final String PROJECT_LOAD_FAILED_TOAST_MSG = "Could not open your project";
+    private static final String OPERATION_FAILED_TOAST_MSG = "Could not change your drawing";
+    private static final String EXPORTED_TOAST_MSG = "Exported your drawing...";
+    private static final String EXPORT_FAILED_TOAST_MSG = "Could not export your drawing";
+    private static final String PROJECT_DIRECTORY = "projects";
+    private static final int PREVIEW_SIZE = 320;
+    private static final int PREVIEW_QUALITY = 85;
 
     public DrawingView(@NonNull Context context, @NonNull AttributeSet attrs) {
         super(context, attrs);
@@ -76,26 +189,55 @@ public class DrawingView extends View {
         mLastSelectedColor = Color.GREEN;
     }
 
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        Looper.myQueue().addIdleHandler(mPrewarmHandler);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        Looper.myQueue().removeIdleHandler(mPrewarmHandler);
+        super.onDetachedFromWindow();
+    }
+
     @Override
     protected void onSizeChanged(int width, int height, int oldWidth, int oldHeight) {
         super.onSizeChanged(width, height, oldWidth, oldHeight);
 
-        mBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-        mCanvas = new Canvas(mBitmap);
-        mCanvas.drawColor(Color.WHITE);
+        startNewDrawing(width, height);
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
+        final DrawingMetrics metrics = mMetrics;
+        final long drawStart = metrics != null ? System.nanoTime() : 0;
+
         super.onDraw(canvas);
-        canvas.drawBitmap(mBitmap, 0, 0, mBitmapPaint);
+        if (mBitmap != null) {
+            canvas.drawBitmap(mBitmap, 0, 0, mBitmapPaint);
+        }
         canvas.drawPath(mPath, mPaint);
+        if (isDrawingShape()) {
+            mStrokeRenderer.drawShape(canvas, mStrokeType, mCurrentStroke.getX(0),
+                    mCurrentStroke.getY(0), mX, mY, mPaint);
+        }
+
+        if (metrics != null) {
+            final long drawEnd = System.nanoTime();
+            metrics.recordDraw(drawStart, drawEnd);
+            if (mMetricsPaint != null) {
+                drawMetricsOverlay(canvas, metrics, drawEnd);
+            }
+        }
     }
 
     /**
      * Sets the view in the brush mode.
      */
     public void setBrushMode() {
+        mStrokeEraseMode = false;
+        mStrokeType = Stroke.TYPE_FREEHAND;
         mPaint.setColor(mLastSelectedColor);
         mDragResource = R.drawable.ic_paint_brush;
         mPaint.setStrokeWidth(DEFAULT_STROKE_WIDTH);
@@ -105,17 +247,42 @@ public class DrawingView extends View {
      * Sets the view in the erase mode.
      */
     public void setEraseMode() {
+        mStrokeEraseMode = false;
+        mStrokeType = Stroke.TYPE_FREEHAND;
         mPaint.setColor(Color.WHITE);
         mDragResource = R.drawable.ic_eraser;
         mPaint.setStrokeWidth(DEFAULT_ERASE_WIDTH);
     }
 
+    /**
+     * Sets the view in a shape mode, drawing lines, rectangles or ellipses with the selected
+     * color.
+     *
+     * @param shapeType One of Stroke.TYPE_LINE, TYPE_RECTANGLE or TYPE_ELLIPSE
+     */
+    public void setShapeMode(byte shapeType) {
+        mStrokeEraseMode = false;
+        mStrokeType = shapeType;
+        mPaint.setColor(mLastSelectedColor);
+        mDragResource = R.drawable.ic_paint_brush;
+        mPaint.setStrokeWidth(DEFAULT_STROKE_WIDTH);
+    }
+
+    /**
+     * Sets the view in the stroke erase mode, where touching a stroke removes all of it.
+     */
+    public void setStrokeEraseMode() {
+        mStrokeEraseMode = true;
+        mDragResource = R.drawable.ic_eraser;
+    }
+
     /**
      * Sets the paint color for the brush in the view
      *
      * @param color The color that the user has selected
      */
     public void setPaintColor(int color) {
+        mStrokeEraseMode = false;
         mPaint.setColor(color);
         mLastSelectedColor = color;
         mDragResource = R.drawable.ic_paint_brush;
@@ -123,20 +290,82 @@ public class DrawingView extends View {
     }
 
     /**
-     * Erases the canvas and sets the default color
+     * Erases the canvas and sets the default color. The erased drawing is a new one, so the next
+     * save creates a new project instead of replacing the one that was open.
      */
     public void eraseAllAndSetDefaultColor() {
-        mCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.MULTIPLY);
+        startNewDrawing(getWidth(), getHeight());
+        mStrokeEraseMode = false;
         mPaint.setColor(mLastSelectedColor);
         mDragResource = R.drawable.ic_paint_brush;
         mPaint.setStrokeWidth(DEFAULT_STROKE_WIDTH);
         invalidate();
     }
 
+    /**
+     * Returns the width of the drawing, which differs from the view after a canvas operation
+     * changed the size.
+     */
+    public int getDrawingWidth() {
+        return mDrawingWidth;
+    }
+
+    /**
+     * Returns the height of the drawing.
+     */
+    public int getDrawingHeight() {
+        return mDrawingHeight;
+    }
+
+    /**
+     * Turns the hot path timings on or off. Turning them off drops everything recorded so far.
+     *
+     * @param enabled true to start recording, false to stop
+     */
+    public void setMetricsEnabled(boolean enabled) {
+        if (enabled && mMetrics == null) {
+            mMetrics = new DrawingMetrics();
+        } else if (!enabled) {
+            mMetrics = null;
+            mMetricsLines = null;
+        }
+        invalidate();
+    }
+
+    public boolean isMetricsEnabled() {
+        return mMetrics != null;
+    }
+
+    /**
+     * Shows or hides the metrics percentiles on top of the drawing. Has no effect on what is shown
+     * until the metrics are enabled.
+     *
+     * @param enabled true to show the overlay, false to hide it
+     */
+    public void setMetricsOverlayEnabled(boolean enabled) {
+        if (enabled && mMetricsPaint == null) {
+            mMetricsPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+            mMetricsPaint.setColor(Color.RED);
+            mMetricsPaint.setTypeface(Typeface.MONOSPACE);
+            mMetricsPaint.setTextSize(METRICS_TEXT_SIZE);
+        } else if (!enabled) {
+            mMetricsPaint = null;
+        }
+        invalidate();
+    }
+
+    /**
+     * Returns the recorded metrics as text, or null if the metrics are not enabled.
+     */
+    public String dumpMetrics() {
+        return mMetrics != null ? mMetrics.dump() : null;
+    }
+
     /**
      * Saves the drawing to the media gallery. The filename has a format of app name_timestamp.jpg
      */
     public void saveDrawing() {
+        ensureBitmap();
         String timeStamp = new SimpleDateFormat("ddMMyyyy_HHmm").format(new Date());
         String pictureName = mContext.getString(R.string.app_name) + "_"+ timeStamp + ".jpg";
         MediaStore.Images.Media.insertImage(mContext.getContentResolver(),
@@ -144,7 +373,488 @@ public class DrawingView extends View {
         Toast.makeText(mContext, SAVE_TOAST_MSG, Toast.LENGTH_SHORT).show();
     }
 
+    /**
+     * Saves the drawing as a project so that it can be opened and edited again. The first save
+     * creates a new project file in the project directory; later saves update the same file with
+     * only what changed since.
+     */
+    public void saveProject() {
+        if (mProjectFile == null) {
+            String timeStamp = new SimpleDateFormat("ddMMyyyy_HHmmss").format(new Date());
+            mProjectFile = new File(getProjectDirectory(mContext),
+                    mContext.getString(R.string.app_name) + "_" + timeStamp + ProjectFile.EXTENSION);
+        }
+        ensureBitmap();
+        final File file = mProjectFile;
+        final int width = mBitmap.getWidth();
+        final int height = mBitmap.getHeight();
+        // Rewrite the whole project if the drawing was replaced since it was last saved, and
+        // all the strokes if saved ones were erased since
+        final boolean create = mProjectStale || !file.exists();
+        final boolean rewriteStrokes = !create && mSavedStrokesRemoved;
+        if (create) {
+            mDirtyTiles.markAll();
+        }
+        // The base bitmap is never drawn on, so the save thread can read it as it is
+        final Bitmap base = create ? mBaseBitmap : null;
+
+        // Only take a copy of the canvas on the UI thread, the save thread cuts the tiles and the
+        // preview out of it. Strokes are not changed after touchUp so the list can be shared
+        // with the save thread.
+        final List<Integer> tiles = new ArrayList<>();
+        for (int tile = mDirtyTiles.nextDirty(0); tile >= 0; tile = mDirtyTiles.nextDirty(tile + 1)) {
+            tiles.add(tile);
+        }
+        final Bitmap snapshot = mBitmap.copy(Bitmap.Config.ARGB_8888, false);
+        final List<Stroke> strokes = new ArrayList<>(
+                mStrokes.subList(create || rewriteStrokes ? 0 : mSavedStrokeCount, mStrokes.size()));
+
+        mDirtyTiles.clear();
+        mSavedStrokeCount = mStrokes.size();
+        mSavedStrokesRemoved = false;
+        mProjectStale = false;
+
+        sBackgroundExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean saved = false;
+                try {
+                    ProjectFile project = create
+                            ? ProjectFile.create(file, width, height) : ProjectFile.open(file);
+                    try {
+                        int[] pixels = new int[ProjectFile.TILE_SIZE * ProjectFile.TILE_SIZE];
+                        for (int i = 0; i < tiles.size(); i++) {
+                            copyTile(snapshot, tiles.get(i), pixels);
+                            project.writeTile(ProjectFile.LAYER_CANVAS, tiles.get(i), pixels);
+                        }
+                        if (base != null) {
+                            int tileCount = project.getTileColumns() * project.getTileRows();
+                            for (int tile = 0; tile < tileCount; tile++) {
+                                copyTile(base, tile, pixels);
+                                project.writeTile(ProjectFile.LAYER_BASE, tile, pixels);
+                            }
+                        }
+                        if (rewriteStrokes) {
+                            project.clearStrokes();
+                        }
+                        project.appendStrokes(strokes, 0);
+                        Bitmap preview = createPreview(snapshot);
+                        ByteArrayOutputStream previewBytes = new ByteArrayOutputStream();
+                        preview.compress(Bitmap.CompressFormat.JPEG, PREVIEW_QUALITY, previewBytes);
+                        preview.recycle();
+                        project.writePreview(previewBytes.toByteArray());
+                        project.commit();
+                        saved = true;
+                    } finally {
+                        project.close();
+                    }
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "saveProject: could not save " + file, e);
+                }
+                snapshot.recycle();
+                onProjectSaved(file, saved);
+            }
+        });
+    }
+
+    /**
+     * Opens a project saved with saveProject and replaces the drawing with it. Later saves go to
+     * the same project.
+     *
+     * @param file The project file
+     */
+    public void loadProject(final File file) {
+        sBackgroundExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ProjectFile project = ProjectFile.openReadOnly(file);
+                    try {
+                        final List<Stroke> strokes = project.readStrokes();
+                        final Bitmap bitmap = readLayer(project, ProjectFile.LAYER_CANVAS);
+                        final Bitmap base = project.hasLayer(ProjectFile.LAYER_BASE)
+                                ? readLayer(project, ProjectFile.LAYER_BASE) : null;
+                        post(new Runnable() {
+                            @Override
+                            public void run() {
+                                setProject(file, bitmap, base, strokes);
+                            }
+                        });
+                    } finally {
+                        project.close();
+                    }
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "loadProject: could not open " + file, e);
+                    post(new Runnable() {
+                        @Override
+                        public void run() {
+                            Toast.makeText(mContext, PROJECT_LOAD_FAILED_TOAST_MSG,
+                                    Toast.LENGTH_SHORT).show();
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * Applies an operation to the whole canvas in the background, then swaps the result in. Does
+     * nothing if another operation is still running.
+     *
+     * The pixels are read straight from the canvas and every buffer is dropped as soon as the
+     * next one is made from it, so that besides the canvas itself at most two copies of the
+     * drawing are alive at once: the input and output of a pass, then the last output and the new
+     * bitmap, then the new bitmap and its base.
+     *
+     * @param operation The operation to apply
+     */
+    public void applyCanvasOperation(final RasterOperation operation) {
+        if (mOperationRunning) {
+            Log.e(LOG_TAG, "applyCanvasOperation: an operation is already running");
+            return;
+        }
+        ensureBitmap();
+        Raster pixels;
+        try {
+            pixels = new Raster(mBitmap.getWidth(), mBitmap.getHeight());
+        } catch (OutOfMemoryError e) {
+            Log.e(LOG_TAG, "applyCanvasOperation: no memory for the canvas pixels", e);
+            Toast.makeText(mContext, OPERATION_FAILED_TOAST_MSG, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        mBitmap.getPixels(pixels.pixels, 0, pixels.width, 0, 0, pixels.width, pixels.height);
+        // The task takes the pixels out when it starts; a captured local would keep them alive
+        // for the whole task, and the engine drops them after the first pass
+        final AtomicReference<Raster> source = new AtomicReference<>(pixels);
+        mOperationRunning = true;
+
+        sBackgroundExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Bitmap result = null;
+                Bitmap base = null;
+                try {
+                    Raster output = getRasterEngine().apply(operation, source.getAndSet(null));
+                    result = Bitmap.createBitmap(output.width, output.height,
+                            Bitmap.Config.ARGB_8888);
+                    result.setPixels(output.pixels, 0, output.width, 0, 0, output.width,
+                            output.height);
+                    output = null;
+                    base = result.copy(Bitmap.Config.ARGB_8888, false);
+                } catch (InterruptedException e) {
+                    Log.e(LOG_TAG, "applyCanvasOperation: interrupted", e);
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException | OutOfMemoryError e) {
+                    Log.e(LOG_TAG, "applyCanvasOperation: failed", e);
+                    if (result != null) {
+                        result.recycle();
+                        result = null;
+                    }
+                }
+                final Bitmap newBitmap = result;
+                final Bitmap newBase = base;
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mOperationRunning = false;
+                        if (newBitmap != null) {
+                            setCanvasBitmap(newBitmap, newBase);
+                        } else {
+                            Toast.makeText(mContext, OPERATION_FAILED_TOAST_MSG,
+                                    Toast.LENGTH_SHORT).show();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Exports the drawing as a png at the given scale in the background. The strokes are drawn
+     * again at that scale instead of scaling up the bitmap. The file is saved in the pictures
+     * directory and added to the gallery; its name has a format of app name_timestamp_WxH.png
+     * with the width and height of the image
+     *
+     * @param scale The size of the image relative to the canvas, for example 2 or 4
+     */
+    public void exportHighResolution(final float scale) {
+        final HighResExporter exporter = new HighResExporter(mDrawingWidth, mDrawingHeight,
+                mBaseBitmap, mStrokes);
+        String timeStamp = new SimpleDateFormat("ddMMyyyy_HHmmss").format(new Date());
+        File directory = new File(Environment.getExternalStoragePublicDirectory(
+                Environment.DIRECTORY_PICTURES), mContext.getString(R.string.app_name));
+        final File file = new File(directory, mContext.getString(R.string.app_name) + "_"
+                + timeStamp + "_" + exporter.getOutputWidth(scale) + "x"
+                + exporter.getOutputHeight(scale) + ".png");
+        final Context appContext = mContext.getApplicationContext();
+
+        sBackgroundExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean exported = false;
+                OutputStream out = null;
+                try {
+                    if (!file.getParentFile().isDirectory() && !file.getParentFile().mkdirs()) {
+                        throw new IOException("Could not create " + file.getParentFile());
+                    }
+                    out = new BufferedOutputStream(new FileOutputStream(file));
+                    exporter.export(out, scale);
+                    out.close();
+                    out = null;
+                    exported = true;
+                    MediaScannerConnection.scanFile(appContext,
+                            new String[]{file.getAbsolutePath()}, new String[]{"image/png"}, null);
+                } catch (IOException | RuntimeException | OutOfMemoryError e) {
+                    Log.e(LOG_TAG, "exportHighResolution: could not export " + file, e);
+                } finally {
+                    if (out != null) {
+                        try {
+                            out.close();
+                        } catch (IOException e) {
+                            Log.e(LOG_TAG, "exportHighResolution: could not close " + file, e);
+                        }
+                    }
+                    if (!exported && file.exists() && !file.delete()) {
+                        Log.e(LOG_TAG, "exportHighResolution: could not delete " + file);
+                    }
+                }
+                final boolean success = exported;
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        Toast.makeText(mContext, success ? EXPORTED_TOAST_MSG
+                                : EXPORT_FAILED_TOAST_MSG, Toast.LENGTH_SHORT).show();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Returns the directory where the projects are saved, creating it if needed.
+     */
+    public static File getProjectDirectory(Context context) {
+        File directory = new File(context.getFilesDir(), PROJECT_DIRECTORY);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(LOG_TAG, "getProjectDirectory: could not create " + directory);
+        }
+        return directory;
+    }
+
+    /**
+     * Called on the save thread when a save is done. If it failed, the next save of the same
+     * project rewrites everything as it is not known what made it to the file.
+     */
+    private void onProjectSaved(final File file, final boolean saved) {
+        post(new Runnable() {
+            @Override
+            public void run() {
+                if (!saved && file.equals(mProjectFile)) {
+                    mProjectStale = true;
+                }
+                Toast.makeText(mContext, saved ? PROJECT_SAVED_TOAST_MSG
+                        : PROJECT_SAVE_FAILED_TOAST_MSG, Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    /**
+     * Replaces the drawing with a loaded project.
+     */
+    private void setProject(File file, Bitmap bitmap, Bitmap base, List<Stroke> strokes) {
+        mBitmap = bitmap;
+        mCanvas = new Canvas(mBitmap);
+        mDrawingWidth = bitmap.getWidth();
+        mDrawingHeight = bitmap.getHeight();
+        mBaseBitmap = base;
+        mStrokes.clear();
+        mStrokes.addAll(strokes);
+        mErasedCount = 0;
+        mStrokeIndex = new StrokeIndex(mDrawingWidth, mDrawingHeight);
+        for (Stroke stroke : mStrokes) {
+            mStrokeIndex.add(stroke);
+        }
+        mDirtyTiles = new DirtyTiles(bitmap.getWidth(), bitmap.getHeight());
+        mProjectFile = file;
+        mSavedStrokeCount = mStrokes.size();
+        mSavedStrokesRemoved = false;
+        mProjectStale = false;
+        invalidate();
+    }
+
+    /**
+     * Replaces the drawing with the result of a canvas operation. The strokes drawn so far are
+     * part of the base now, so they are dropped.
+     */
+    private void setCanvasBitmap(Bitmap bitmap, Bitmap base) {
+        mBitmap = bitmap;
+        mCanvas = new Canvas(mBitmap);
+        mDrawingWidth = bitmap.getWidth();
+        mDrawingHeight = bitmap.getHeight();
+        mBaseBitmap = base;
+        mStrokes.clear();
+        mErasedCount = 0;
+        mStrokeIndex = new StrokeIndex(mDrawingWidth, mDrawingHeight);
+        mDirtyTiles = new DirtyTiles(bitmap.getWidth(), bitmap.getHeight());
+        // None of the strokes drawn from now on are saved yet
+        mSavedStrokeCount = 0;
+        mSavedStrokesRemoved = false;
+        mProjectStale = true;
+        invalidate();
+    }
+
+    /**
+     * Returns the engine for canvas operations, with one thread per core.
+     */
+    private static synchronized RasterOperationEngine getRasterEngine() {
+        if (sRasterEngine == null) {
+            sRasterEngine = new RasterOperationEngine(Runtime.getRuntime().availableProcessors());
+        }
+        return sRasterEngine;
+    }
+
+    /**
+     * Reads all the tiles of a layer into a new bitmap. Tiles that were never saved are white.
+     */
+    private static Bitmap readLayer(ProjectFile project, int layer) throws IOException {
+        Bitmap bitmap = Bitmap.createBitmap(project.getWidth(), project.getHeight(),
+                Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(Color.WHITE);
+        int[] pixels = new int[ProjectFile.TILE_SIZE * ProjectFile.TILE_SIZE];
+        int tileCount = project.getTileColumns() * project.getTileRows();
+        for (int tile = 0; tile < tileCount; tile++) {
+            if (project.readTile(layer, tile, pixels)) {
+                pasteTile(bitmap, tile, pixels);
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Creates a small copy of the drawing on a white background, to be shown in the project
+     * browser.
+     */
+    private static Bitmap createPreview(Bitmap bitmap) {
+        float scale = Math.min(1f, (float) PREVIEW_SIZE
+                / Math.max(bitmap.getWidth(), bitmap.getHeight()));
+        int width = Math.max(1, Math.round(bitmap.getWidth() * scale));
+        int height = Math.max(1, Math.round(bitmap.getHeight() * scale));
+        Bitmap preview = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(preview);
+        canvas.drawColor(Color.WHITE);
+        canvas.drawBitmap(bitmap, new Rect(0, 0, bitmap.getWidth(), bitmap.getHeight()),
+                new Rect(0, 0, width, height), new Paint(Paint.FILTER_BITMAP_FLAG));
+        return preview;
+    }
+
+    /**
+     * Copies a tile of the bitmap into pixels with a stride of TILE_SIZE. The part of an edge
+     * tile that falls outside the bitmap is cleared so it compresses to nothing.
+     */
+    private static void copyTile(Bitmap bitmap, int tile, int[] pixels) {
+        int columns = ProjectFile.tileCount(bitmap.getWidth());
+        int x = (tile % columns) * ProjectFile.TILE_SIZE;
+        int y = (tile / columns) * ProjectFile.TILE_SIZE;
+        int width = Math.min(ProjectFile.TILE_SIZE, bitmap.getWidth() - x);
+        int height = Math.min(ProjectFile.TILE_SIZE, bitmap.getHeight() - y);
+        if (width < ProjectFile.TILE_SIZE || height < ProjectFile.TILE_SIZE) {
+            Arrays.fill(pixels, 0);
+        }
+        bitmap.getPixels(pixels, 0, ProjectFile.TILE_SIZE, x, y, width, height);
+    }
+
+    /**
+     * Copies pixels with a stride of TILE_SIZE into a tile of the bitmap.
+     */
+    private static void pasteTile(Bitmap bitmap, int tile, int[] pixels) {
+        int columns = ProjectFile.tileCount(bitmap.getWidth());
+        int x = (tile % columns) * ProjectFile.TILE_SIZE;
+        int y = (tile / columns) * ProjectFile.TILE_SIZE;
+        int width = Math.min(ProjectFile.TILE_SIZE, bitmap.getWidth() - x);
+        int height = Math.min(ProjectFile.TILE_SIZE, bitmap.getHeight() - y);
+        bitmap.setPixels(pixels, 0, ProjectFile.TILE_SIZE, x, y, width, height);
+    }
+
+    /**
+     * Replaces the drawing with an empty one of the given size that is not part of any project,
+     * so that the next save creates a new project instead of replacing the one that was open.
+     * The white background is only allocated with the next stroke.
+     */
+    private void startNewDrawing(int width, int height) {
+        mBitmap = null;
+        mCanvas = null;
+        mDrawingWidth = width;
+        mDrawingHeight = height;
+        mStrokes.clear();
+        mErasedCount = 0;
+        mStrokeIndex = new StrokeIndex(width, height);
+        mBaseBitmap = null;
+        mDirtyTiles = new DirtyTiles(width, height);
+        mProjectFile = null;
+        mSavedStrokeCount = 0;
+        mSavedStrokesRemoved = false;
+        mProjectStale = true;
+    }
+
+    /**
+     * Allocates the bitmap the strokes are drawn on, filled with white, if there is none yet.
+     */
+    private void ensureBitmap() {
+        if (mBitmap == null) {
+            mBitmap = Bitmap.createBitmap(mDrawingWidth, mDrawingHeight, Bitmap.Config.ARGB_8888);
+            mCanvas = new Canvas(mBitmap);
+            mCanvas.drawColor(Color.WHITE);
+        }
+    }
+
+    /**
+     * Returns true once the bitmap has been allocated. For tests.
+     */
+    boolean hasBitmap() {
+        return mBitmap != null;
+    }
+
+    /**
+     * Decodes the drag cursors and draws a short stroke and a shape into a small scratch bitmap,
+     * so that the decoding and the first use of the paints happen before the first touch.
+     */
+    private void prewarm() {
+        getDragBitmap(R.drawable.ic_paint_brush);
+        getDragBitmap(R.drawable.ic_eraser);
+
+        Bitmap scratch = Bitmap.createBitmap(PREWARM_SIZE, PREWARM_SIZE, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(scratch);
+        Path path = new Path();
+        path.moveTo(0, 0);
+        path.quadTo(PREWARM_SIZE / 2, 0, PREWARM_SIZE, PREWARM_SIZE);
+        canvas.drawPath(path, mPaint);
+        mStrokeRenderer.drawShape(canvas, Stroke.TYPE_ELLIPSE, 0, 0, PREWARM_SIZE, PREWARM_SIZE,
+                mPaint);
+        scratch.recycle();
+    }
+
+    /**
+     * Returns the drag cursor for a drawable, decoding and scaling it only the first time.
+     */
+    private Bitmap getDragBitmap(int resource) {
+        Bitmap bitmap = mDragBitmaps.get(resource);
+        if (bitmap == null) {
+            bitmap = BitmapFactory.decodeResource(mContext.getResources(), resource);
+            bitmap = Bitmap.createScaledBitmap(bitmap, SCALED_IMAGE_SIZE, SCALED_IMAGE_SIZE, false);
+            mDragBitmaps.put(resource, bitmap);
+        }
+        return bitmap;
+    }
+
     private void touchStart(float x, float y) {
+        ensureBitmap();
+        mCurrentStroke = new Stroke(mStrokeType, mPaint.getColor(), mPaint.getStrokeWidth());
+        mCurrentStroke.addPoint(x, y);
+        if (isDrawingShape()) {
+            mX = x;
+            mY = y;
+            return;
+        }
         mPath.reset();
         mPath.moveTo(x, y);
         mX = x;
@@ -152,46 +862,267 @@ public class DrawingView extends View {
     }
 
     private void touchMove(float x, float y) {
+        if (mCurrentStroke == null) {
+            return;
+        }
+        if (isDrawingShape()) {
+            mX = x;
+            mY = y;
+            return;
+        }
         float dx = Math.abs(x - mX);
         float dy = Math.abs(y - mY);
         if (dx >= TOUCH_TOLERANCE || dy >= TOUCH_TOLERANCE) {
             mPath.quadTo(mX, mY, (x + mX) / 2, (y + mY) / 2);
+            mCurrentStroke.addPoint(x, y);
             mX = x;
             mY = y;
         }
     }
 
     private void touchUp() {
-        mPath.lineTo(mX, mY);
-        mCanvas.drawPath(mPath, mPaint);
+        if (mCurrentStroke == null) {
+            return;
+        }
+        final long commitStart = mMetrics != null ? System.nanoTime() : 0;
+        if (isDrawingShape()) {
+            mCurrentStroke.addPoint(mX, mY);
+            mStrokeRenderer.drawShape(mCanvas, mStrokeType, mCurrentStroke.getX(0),
+                    mCurrentStroke.getY(0), mX, mY, mPaint);
+            mShapeBounds.setEmpty();
+        } else {
+            mPath.lineTo(mX, mY);
+            mCanvas.drawPath(mPath, mPaint);
+            mPath.reset();
+        }
+        mStrokes.add(mCurrentStroke);
+        mStrokeIndex.add(mCurrentStroke);
+        mDirtyTiles.mark(mCurrentStroke.getLeft(), mCurrentStroke.getTop(),
+                mCurrentStroke.getRight(), mCurrentStroke.getBottom());
+        mCurrentStroke = null;
+        if (mMetrics != null) {
+            mMetrics.recordCommit(commitStart, System.nanoTime());
+        }
+    }
+
+    /**
+     * Drops the current stroke without drawing it, when the system takes the gesture away.
+     */
+    private void touchCancel() {
         mPath.reset();
+        mShapeBounds.setEmpty();
+        mCurrentStroke = null;
     }
 
     @Override
     public boolean onTouchEvent(MotionEvent event) {
+        int action = event.getAction();
+        if (action == MotionEvent.ACTION_DOWN) {
+            // The canvas is about to be replaced, a stroke started now would be lost, so the
+            // whole gesture is dropped
+            mIgnoringGesture = mOperationRunning;
+        }
+        if (mIgnoringGesture) {
+            if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+                mIgnoringGesture = false;
+            }
+            return true;
+        }
         float x = event.getX();
         float y = event.getY();
 
-        switch (event.getAction()) {
+        // Only events that invalidate are recorded as input, so that no frame is charged for an
+        // event it does not draw
+        if (mStrokeEraseMode) {
+            switch (action) {
+                case MotionEvent.ACTION_DOWN:
+                    startDrag(event);
+                    if (eraseStrokesAt(x, y)) {
+                        recordInput(event);
+                    }
+                    break;
+                case MotionEvent.ACTION_MOVE:
+                    if (eraseStrokesAt(x, y)) {
+                        recordInput(event);
+                    }
+                    drag(event);
+                    break;
+                case MotionEvent.ACTION_UP:
+                case MotionEvent.ACTION_CANCEL:
+                    stopDrag();
+                    removeErasedStrokes();
+                    break;
+            }
+            return true;
+        }
+
+        if (action != MotionEvent.ACTION_DOWN && mCurrentStroke == null) {
+            // The down of this gesture was not seen, there is no stroke to continue
+            return true;
+        }
+        switch (action) {
             case MotionEvent.ACTION_DOWN:
+                recordInput(event);
                 touchStart(x, y);
                 startDrag(event);
-                invalidate();
+                invalidateStroke();
                 break;
             case MotionEvent.ACTION_MOVE:
+                recordInput(event);
                 touchMove(x, y);
-                invalidate();
+                invalidateStroke();
                 drag(event);
                 break;
             case MotionEvent.ACTION_UP:
+                recordInput(event);
+                invalidateStroke();
                 touchUp();
-                invalidate();
                 stopDrag();
                 break;
+            case MotionEvent.ACTION_CANCEL:
+                invalidateStroke();
+                touchCancel();
+                stopDrag();
+                break;
+        }
+        return true;
+    }
+
+    /**
+     * Remembers the time of an event for the input to frame latency, if the metrics are on. Must
+     * only be called for events that invalidate the view.
+     */
+    private void recordInput(MotionEvent event) {
+        if (mMetrics != null) {
+            mMetrics.recordInput(getEventTimeNanos(event));
+        }
+    }
+
+    /**
+     * Removes the strokes within STROKE_ERASER_RADIUS of a point and draws the area they covered
+     * again from the base and the strokes left in it.
+     *
+     * @return true if a stroke was erased and the view invalidated
+     */
+    private boolean eraseStrokesAt(float x, float y) {
+        mFoundStrokes.clear();
+        mStrokeIndex.query(x - STROKE_ERASER_RADIUS, y - STROKE_ERASER_RADIUS,
+                x + STROKE_ERASER_RADIUS, y + STROKE_ERASER_RADIUS, mFoundStrokes);
+        mErasedBounds.setEmpty();
+        for (int i = 0; i < mFoundStrokes.size(); i++) {
+            Stroke stroke = mFoundStrokes.get(i);
+            if (!stroke.isNear(x, y, STROKE_ERASER_RADIUS)) {
+                continue;
+            }
+            mStrokeIndex.remove(stroke);
+            stroke.markErased();
+            mErasedCount++;
+            mErasedBounds.union(stroke.getLeft(), stroke.getTop(), stroke.getRight(),
+                    stroke.getBottom());
         }
+        if (mErasedBounds.isEmpty()) {
+            return false;
+        }
+        // A pixel more on every side for anti aliasing
+        mRedrawBounds.set((int) Math.floor(mErasedBounds.left) - 1,
+                (int) Math.floor(mErasedBounds.top) - 1, (int) Math.ceil(mErasedBounds.right) + 1,
+                (int) Math.ceil(mErasedBounds.bottom) + 1);
+        redraw(mRedrawBounds);
+        mDirtyTiles.mark(mRedrawBounds.left, mRedrawBounds.top, mRedrawBounds.right,
+                mRedrawBounds.bottom);
+        invalidate(mRedrawBounds);
         return true;
     }
 
+    /**
+     * Takes the strokes erased by the eraser gesture out of the list of strokes, all in one pass
+     * instead of searching the list for each of them.
+     */
+    private void removeErasedStrokes() {
+        if (mErasedCount == 0) {
+            return;
+        }
+        int savedRemoved = Stroke.removeErased(mStrokes, mSavedStrokeCount);
+        if (savedRemoved > 0) {
+            mSavedStrokeCount -= savedRemoved;
+            mSavedStrokesRemoved = true;
+        }
+        mErasedCount = 0;
+    }
+
+    /**
+     * Draws an area of the bitmap again from the base bitmap, or white, and the strokes that
+     * cross it, in the order they were drawn.
+     */
+    private void redraw(Rect bounds) {
+        ensureBitmap();
+        mCanvas.save();
+        mCanvas.clipRect(bounds);
+        mCanvas.drawColor(Color.WHITE);
+        if (mBaseBitmap != null) {
+            mCanvas.drawBitmap(mBaseBitmap, 0, 0, mBitmapPaint);
+        }
+        mFoundStrokes.clear();
+        mStrokeIndex.query(bounds.left, bounds.top, bounds.right, bounds.bottom, mFoundStrokes);
+        for (int i = 0; i < mFoundStrokes.size(); i++) {
+            mStrokeRenderer.draw(mCanvas, mFoundStrokes.get(i));
+        }
+        mCanvas.restore();
+    }
+
+    private boolean isDrawingShape() {
+        return mCurrentStroke != null && mCurrentStroke.getType() != Stroke.TYPE_FREEHAND;
+    }
+
+    /**
+     * Invalidates what the current stroke changed. A shape only invalidates the union of where it
+     * was last drawn and where it is now, as nothing else changes while it is dragged.
+     */
+    private void invalidateStroke() {
+        if (!isDrawingShape()) {
+            invalidate();
+            return;
+        }
+        float x0 = mCurrentStroke.getX(0);
+        float y0 = mCurrentStroke.getY(0);
+        // Half the stroke width on every side, plus a pixel for anti aliasing
+        int outset = (int) Math.ceil(mPaint.getStrokeWidth() / 2) + 1;
+        int left = (int) Math.floor(Math.min(x0, mX)) - outset;
+        int top = (int) Math.floor(Math.min(y0, mY)) - outset;
+        int right = (int) Math.ceil(Math.max(x0, mX)) + outset;
+        int bottom = (int) Math.ceil(Math.max(y0, mY)) + outset;
+        mShapeBounds.union(left, top, right, bottom);
+        invalidate(mShapeBounds);
+        mShapeBounds.set(left, top, right, bottom);
+    }
+
+    /**
+     * Returns the time of the oldest sample in the event on the System.nanoTime clock. Batched move
+     * events carry older samples in their history.
+     */
+    private static long getEventTimeNanos(MotionEvent event) {
+        long eventTime = event.getHistorySize() > 0
+                ? event.getHistoricalEventTime(0) : event.getEventTime();
+        return eventTime * 1000000L;
+    }
+
+    /**
+     * Draws the metrics summary in the top left corner. The text is only rebuilt every half
+     * second to keep the overlay from skewing the numbers it shows.
+     */
+    private void drawMetricsOverlay(Canvas canvas, DrawingMetrics metrics, long now) {
+        if (mMetricsLines == null || now - mMetricsLinesNanos > METRICS_OVERLAY_REFRESH_NANOS) {
+            mMetricsLines = metrics.getSummaryLines();
+            mMetricsLinesNanos = now;
+        }
+        float lineHeight = mMetricsPaint.getFontSpacing();
+        float y = lineHeight;
+        for (String line : mMetricsLines) {
+            canvas.drawText(line, 0, y, mMetricsPaint);
+            y += lineHeight;
+        }
+    }
+
     /**
      * Creates a drag view to be dragged at coordinates where the user first touches.
      *
@@ -202,9 +1133,7 @@ public class DrawingView extends View {
         final int x = (int) ev.getRawX();
         final int y = (int) ev.getRawY();
 
-        Bitmap bitmap = BitmapFactory.decodeResource(mContext.getResources(),
-                mDragResource);
-        bitmap = Bitmap.createScaledBitmap(bitmap, SCALED_IMAGE_SIZE, SCALED_IMAGE_SIZE, false);
+        Bitmap bitmap = getDragBitmap(mDragResource);
 
         WindowManager.LayoutParams windowParams = new WindowManager.LayoutParams();
         windowParams.gravity = Gravity.TOP | Gravity.START;
@@ -0,0 +1,72 @@
+package com.mbelkhode.drawingfun;
+
+import android.app.Activity;
+import android.app.AlertDialog;
+import android.app.Dialog;
+import android.app.DialogFragment;
+import android.content.DialogInterface;
+import android.graphics.Color;
+import android.graphics.drawable.ColorDrawable;
+import android.os.Bundle;
+
+/**
+ * This dialog fragment pops up the list of sizes a drawing can be exported at and lets the user
+ * choose one. The invoking activity implements the callback onExportScaleSelected to get back the
+ * chosen size, one of the SCALE constants.
+ */
+
+public class ExportScaleFragment extends DialogFragment {
+
+    // In the same order as R.array.export_scales
+    public static final int SCALE_DOUBLE = 0;
+    public static final int SCALE_QUADRUPLE = 1;
+    public static final int SCALE_PRINT = 2;
+
+    private OnExportScaleSelectedListener mListener;
+
+    /**
+     * Instantiates a new fragment and returns to the caller.
+     */
+    public static ExportScaleFragment newInstance() {
+        return new ExportScaleFragment();
+    }
+
+    /**
+     * The interface to be implemented by the associated activity to get back the chosen size.
+     */
+    public interface OnExportScaleSelectedListener {
+        void onExportScaleSelected(int scale);
+    }
+
+    @Override
+    public void onAttach(Activity activity) {
+        super.onAttach(activity);
+        try {
+            mListener = (OnExportScaleSelectedListener) activity;
+        } catch (ClassCastException e) {
+            throw new ClassCastException(activity.toString() + " must implement OnExportScaleSelectedListener");
+        }
+    }
+
+    @Override
+    public Dialog onCreateDialog(Bundle savedInstanceState) {
+
+        AlertDialog.Builder alertDialogBuilder = new AlertDialog.Builder(getActivity());
+        alertDialogBuilder.setTitle(R.string.export);
+        alertDialogBuilder.setItems(R.array.export_scales, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                dialog.dismiss();
+                mListener.onExportScaleSelected(which);
+            }
+        });
+
+        return alertDialogBuilder.create();
+    }
+
+    @Override
+    public void onStart() {
+        super.onStart();
+        getDialog().getWindow().setBackgroundDrawable(new ColorDrawable(Color.WHITE));
+    }
+}
@@ -0,0 +1,107 @@
+package com.mbelkhode.drawingfun;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Exports a drawing as a png at a larger scale than the canvas. Rather than scaling up the canvas
+ * bitmap, the strokes are drawn again at the new scale so that they stay sharp; only the base
+ * bitmap, the pixels left by canvas operations, is scaled up with filtering.
+ *
+ * The image is drawn one band of rows at a time into a single band bitmap that is reused, and
+ * each band is streamed to a PngWriter before the next one is drawn. Only the strokes that
+ * overlap a band are drawn into it. The memory used therefore depends on the width of the image
+ * and BAND_BYTES, not on its height.
+ *
+ * export blocks until the image is written, so it must not be called on the UI thread.
+ */
+public class HighResExporter {
+
+    // The size of the band bitmap aimed for, about 2 MB
+    static final int BAND_BYTES = 2 * 1024 * 1024;
+
+    private final int mWidth;
+    private final int mHeight;
+    private final Bitmap mBase;
+    private final List<Stroke> mStrokes;
+    private final StrokeRenderer mRenderer = new StrokeRenderer();
+    private final Paint mBasePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    /**
+     * @param width The width of the drawing at scale 1
+     * @param height The height of the drawing at scale 1
+     * @param base The pixels under the strokes, or null if they are white
+     * @param strokes The strokes, in the order they were drawn. The list is copied.
+     */
+    public HighResExporter(int width, int height, Bitmap base, List<Stroke> strokes) {
+        mWidth = width;
+        mHeight = height;
+        mBase = base;
+        mStrokes = new ArrayList<>(strokes);
+    }
+
+    public int getOutputWidth(float scale) {
+        return Math.max(1, Math.round(mWidth * scale));
+    }
+
+    public int getOutputHeight(float scale) {
+        return Math.max(1, Math.round(mHeight * scale));
+    }
+
+    /**
+     * Draws the drawing at the given scale and writes it to out as a png. The stream is not
+     * closed.
+     */
+    public void export(OutputStream out, float scale) throws IOException {
+        int width = getOutputWidth(scale);
+        int height = getOutputHeight(scale);
+        int bandRows = getBandRows(width, height);
+        Bitmap band = Bitmap.createBitmap(width, bandRows, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(band);
+        int[] pixels = new int[width * bandRows];
+        PngWriter writer = new PngWriter(out, width, height);
+        try {
+            for (int top = 0; top < height; top += bandRows) {
+                int rows = Math.min(bandRows, height - top);
+                drawBand(canvas, scale, top, bandRows);
+                band.getPixels(pixels, 0, width, 0, 0, width, rows);
+                writer.writeRows(pixels, 0, width, rows);
+            }
+            writer.close();
+        } finally {
+            band.recycle();
+        }
+    }
+
+    /**
+     * Returns how many rows fit in a band of about BAND_BYTES, at least one.
+     */
+    static int getBandRows(int width, int height) {
+        return Math.max(1, Math.min(height, BAND_BYTES / (width * 4)));
+    }
+
+    private void drawBand(Canvas canvas, float scale, int top, int rows) {
+        canvas.drawColor(Color.WHITE);
+        canvas.save();
+        canvas.translate(0, -top);
+        canvas.scale(scale, scale);
+        if (mBase != null) {
+            canvas.drawBitmap(mBase, 0, 0, mBasePaint);
+        }
+        // The band in drawing coordinates
+        float bandTop = top / scale;
+        float bandBottom = (top + rows) / scale;
+        for (Stroke stroke : mStrokes) {
+            if (stroke.getBottom() >= bandTop && stroke.getTop() <= bandBottom) {
+                mRenderer.draw(canvas, stroke);
+            }
+        }
+        canvas.restore();
+    }
+}
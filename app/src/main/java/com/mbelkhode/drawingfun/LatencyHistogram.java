@@ -0,0 +1,130 @@
+package com.mbelkhode.drawingfun;
+
+/**
+ * A fixed-size histogram of latency values in nanoseconds, laid out the same way as
+ * HdrHistogram. Values below 128 get an exact bucket each. Every power of two above that is
+ * split into 64 linear sub buckets, so any reported value is within about 1.6% of the recorded
+ * one.
+ *
+ * All the storage is allocated in the constructor and recordValue never allocates, so it is
+ * safe to call from the drawing hot path. The histogram is not thread safe and is meant to be
+ * used from the UI thread only.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+
+    // Anything slower than about a minute is clamped into the last bucket.
+    private static final int MAX_VALUE_BITS = 36;
+    public static final long MAX_TRACKABLE_VALUE = (1L << MAX_VALUE_BITS) - 1;
+
+    private static final int BUCKET_COUNT =
+            SUB_BUCKET_COUNT + (MAX_VALUE_BITS - SUB_BUCKET_BITS) * SUB_BUCKET_HALF_COUNT;
+
+    private final long[] mCounts = new long[BUCKET_COUNT];
+    private long mTotalCount;
+    private long mTotalValue;
+    private long mMinValue = Long.MAX_VALUE;
+    private long mMaxValue;
+
+    /**
+     * Records a single value. Negative values are recorded as 0 and values above
+     * MAX_TRACKABLE_VALUE are clamped to it.
+     *
+     * @param value The latency in nanoseconds
+     */
+    public void recordValue(long value) {
+        if (value < 0) {
+            value = 0;
+        } else if (value > MAX_TRACKABLE_VALUE) {
+            value = MAX_TRACKABLE_VALUE;
+        }
+        mCounts[indexFor(value)]++;
+        mTotalCount++;
+        mTotalValue += value;
+        if (value < mMinValue) {
+            mMinValue = value;
+        }
+        if (value > mMaxValue) {
+            mMaxValue = value;
+        }
+    }
+
+    /**
+     * Returns the value at the given percentile, for example 99.0 for the 99th percentile.
+     * Returns 0 when nothing has been recorded.
+     *
+     * @param percentile The percentile between 0 and 100
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (mTotalCount == 0) {
+            return 0;
+        }
+        double clamped = Math.min(Math.max(percentile, 0.0), 100.0);
+        long countAtPercentile = Math.max(1, (long) Math.ceil(clamped / 100.0 * mTotalCount));
+        long runningCount = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            runningCount += mCounts[i];
+            if (runningCount >= countAtPercentile) {
+                return Math.min(highestValueFor(i), mMaxValue);
+            }
+        }
+        return mMaxValue;
+    }
+
+    public long getTotalCount() {
+        return mTotalCount;
+    }
+
+    public long getMinValue() {
+        return mTotalCount == 0 ? 0 : mMinValue;
+    }
+
+    public long getMaxValue() {
+        return mMaxValue;
+    }
+
+    public double getMean() {
+        return mTotalCount == 0 ? 0.0 : (double) mTotalValue / mTotalCount;
+    }
+
+    /**
+     * Clears all the recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts[i] = 0;
+        }
+        mTotalCount = 0;
+        mTotalValue = 0;
+        mMinValue = Long.MAX_VALUE;
+        mMaxValue = 0;
+    }
+
+    /**
+     * Maps a value to its bucket. Values with the same top 7 significant bits share a bucket.
+     */
+    private static int indexFor(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+        int subBucket = (int) (value >>> shift) - SUB_BUCKET_HALF_COUNT;
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF_COUNT + subBucket;
+    }
+
+    /**
+     * Returns the highest value that maps to the given bucket.
+     */
+    private static long highestValueFor(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int offset = index - SUB_BUCKET_COUNT;
+        int shift = offset / SUB_BUCKET_HALF_COUNT + 1;
+        long subBucket = offset % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -8,9 +8,12 @@ import android.support.v7.app.ActionBarActivity;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import java.io.File;
 
 /**
- * The application's main activity that runs when the app is launched. Uses 3 fragments
+ * The application's main activity that runs when the app is launched. Uses 6 fragments
  *
  *    1. DrawingFragment - This fragment sets up the drawing canvas and enables to user to
  *           set the fragment in brush mode, erase mode, set the paint color and erase the entire
@@ -22,15 +25,61 @@ import android.view.MenuItem;
  *           erase the whole canvas. The invoking activity implements the callback to receive the
  *           response back from the user. The fragment accepts the title as the input of the dialog
  *           to keep the fragment generic and reusable.
+ *    4. ProjectBrowserFragment - This dialog fragment shows the saved projects and lets the user
+ *           open one. The invoking activity implements the callback to get back the chosen project
+ *           and passes it to the DrawingFragment.
+ *    5. CanvasOperationFragment - This dialog fragment pops up the list of whole canvas
+ *           operations. The invoking activity implements the callback to get back the chosen
+ *           operation and passes it to the DrawingFragment.
+ *    6. ExportScaleFragment - This dialog fragment pops up the sizes the drawing can be exported
+ *           at. The invoking activity implements the callback to get back the chosen size and
+ *           passes it to the DrawingFragment.
  *
  */
 
 public class MainActivity extends ActionBarActivity
-        implements ColorSelectionFragment.OnColorSelectedListener, AlertFragment.OnResponseSelectedListener {
+        implements ColorSelectionFragment.OnColorSelectedListener, AlertFragment.OnResponseSelectedListener,
+        ProjectBrowserFragment.OnProjectSelectedListener,
+        CanvasOperationFragment.OnCanvasOperationSelectedListener,
+        ExportScaleFragment.OnExportScaleSelectedListener {
 
     private static final String LOG_TAG = MainActivity.class.getSimpleName();
     private static final String FIRST_RUN_KEY = "first run key";
     private boolean mFirstRun = true;
+    private boolean mFirstFrameDrawn;
+
+    // Posted from the first pre draw so that it runs once the first frame is on the screen
+    private final Runnable mShowFirstRunColorSelection = new Runnable() {
+        @Override
+        public void run() {
+            if (!mFirstRun) {
+                return;
+            }
+            mFirstRun = false;
+            ColorSelectionFragment fragment = ColorSelectionFragment.newInstance();
+            if (fragment != null) {
+                fragment.show(getFragmentManager(), "color selection dialog");
+            } else {
+                Log.e(LOG_TAG, "first run: color selection fragment is null");
+            }
+        }
+    };
+
+    private final ViewTreeObserver.OnPreDrawListener mFirstFrameListener =
+            new ViewTreeObserver.OnPreDrawListener() {
+        @Override
+        public boolean onPreDraw() {
+            View decorView = getWindow().getDecorView();
+            decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+            mFirstFrameDrawn = true;
+            // Everything else is deferred, so the drawing screen is usable from its first frame
+            reportFullyDrawn();
+            if (mFirstRun) {
+                decorView.post(mShowFirstRunColorSelection);
+            }
+            return true;
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -47,21 +96,28 @@ public class MainActivity extends ActionBarActivity
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the menu; this adds items to the action bar if it is present.
         getMenuInflater().inflate(R.menu.menu_main, menu);
+        // The metrics are a debugging aid and are not shown in release builds
+        menu.findItem(R.id.metrics).setVisible(BuildConfig.DEBUG);
         return true;
     }
 
     @Override
     public void onStart() {
         super.onStart();
-        if (mFirstRun) {
-            ColorSelectionFragment fragment = ColorSelectionFragment.newInstance();
-            if (fragment != null) {
-                fragment.show(getFragmentManager(), "color selection dialog");
-            } else {
-                Log.e(LOG_TAG, "onStart: color selection fragment is null");
-            }
+        if (!mFirstFrameDrawn) {
+            // The palette waits for the first frame so that it does not hold up the drawing
+            // screen from showing
+            getWindow().getDecorView().getViewTreeObserver()
+                    .addOnPreDrawListener(mFirstFrameListener);
         }
-        mFirstRun = false;
+    }
+
+    @Override
+    public void onStop() {
+        View decorView = getWindow().getDecorView();
+        decorView.getViewTreeObserver().removeOnPreDrawListener(mFirstFrameListener);
+        decorView.removeCallbacks(mShowFirstRunColorSelection);
+        super.onStop();
     }
 
     @Override
@@ -88,6 +144,24 @@ public class MainActivity extends ActionBarActivity
                     Log.e(LOG_TAG, "onOptionsItemSelected: erase: Drawing fragment is null");
                 }
                 return true;
+            case R.id.erase_strokes:
+                DrawingFragment strokeEraseFragment = getDrawingFragment();
+                if (strokeEraseFragment != null) {
+                    strokeEraseFragment.setStrokeEraseMode();
+                } else {
+                    Log.e(LOG_TAG, "onOptionsItemSelected: erase strokes: Drawing fragment is null");
+                }
+                return true;
+            case R.id.shape_line:
+            case R.id.shape_rectangle:
+            case R.id.shape_ellipse:
+                DrawingFragment shapeFragment = getDrawingFragment();
+                if (shapeFragment != null) {
+                    shapeFragment.setShapeMode(getShapeType(id));
+                } else {
+                    Log.e(LOG_TAG, "onOptionsItemSelected: shape: Drawing fragment is null");
+                }
+                return true;
             case R.id.select_color:
                 ColorSelectionFragment fragment = ColorSelectionFragment.newInstance();
                 if (fragment != null) {
@@ -112,6 +186,47 @@ public class MainActivity extends ActionBarActivity
                     Log.e(LOG_TAG, "onOptionsItemSelected: save: Drawing fragment is null");
                 }
                 return true;
+            case R.id.save_project:
+                DrawingFragment projectFragment = getDrawingFragment();
+                if (projectFragment != null) {
+                    projectFragment.saveProject();
+                } else {
+                    Log.e(LOG_TAG, "onOptionsItemSelected: save project: Drawing fragment is null");
+                }
+                return true;
+            case R.id.open_project:
+                ProjectBrowserFragment browserFragment = ProjectBrowserFragment.newInstance();
+                if (browserFragment != null) {
+                    browserFragment.show(getFragmentManager(), "project browser dialog");
+                } else {
+                    Log.e(LOG_TAG, "onOptionsItemSelected: project browser fragment is null");
+                }
+                return true;
+            case R.id.export:
+                ExportScaleFragment exportFragment = ExportScaleFragment.newInstance();
+                if (exportFragment != null) {
+                    exportFragment.show(getFragmentManager(), "export scale dialog");
+                } else {
+                    Log.e(LOG_TAG, "onOptionsItemSelected: export scale fragment is null");
+                }
+                return true;
+            case R.id.canvas_operations:
+                CanvasOperationFragment operationFragment = CanvasOperationFragment.newInstance();
+                if (operationFragment != null) {
+                    operationFragment.show(getFragmentManager(), "canvas operation dialog");
+                } else {
+                    Log.e(LOG_TAG, "onOptionsItemSelected: canvas operation fragment is null");
+                }
+                return true;
+            case R.id.metrics:
+                DrawingFragment metricsFragment = getDrawingFragment();
+                if (metricsFragment != null) {
+                    item.setChecked(!item.isChecked());
+                    metricsFragment.setMetricsEnabled(item.isChecked());
+                } else {
+                    Log.e(LOG_TAG, "onOptionsItemSelected: metrics: Drawing fragment is null");
+                }
+                return true;
             default:
                 return super.onOptionsItemSelected(item);
         }
@@ -168,6 +283,69 @@ public class MainActivity extends ActionBarActivity
         }
     }
 
+    /**
+     * This is the callback implemented by this activity to receive the project chosen in the
+     * ProjectBrowserFragment. The project is then passed to the DrawingFragment to be opened.
+     *
+     * @param project The project file selected by the user
+     */
+    @Override
+    public void onProjectSelected(File project) {
+        DrawingFragment fragment = getDrawingFragment();
+        if (fragment != null) {
+            fragment.loadProject(project);
+        } else {
+            Log.e(LOG_TAG, "onProjectSelected: Drawing fragment is null");
+        }
+    }
+
+    /**
+     * This is the callback implemented by this activity to receive the operation chosen in the
+     * CanvasOperationFragment. The operation is then passed to the DrawingFragment to be applied.
+     *
+     * @param operation One of the CanvasOperationFragment OPERATION constants
+     */
+    @Override
+    public void onCanvasOperationSelected(int operation) {
+        DrawingFragment fragment = getDrawingFragment();
+        if (fragment != null) {
+            fragment.applyCanvasOperation(operation);
+        } else {
+            Log.e(LOG_TAG, "onCanvasOperationSelected: Drawing fragment is null");
+        }
+    }
+
+    /**
+     * This is the callback implemented by this activity to receive the size chosen in the
+     * ExportScaleFragment. The size is then passed to the DrawingFragment to export the drawing.
+     *
+     * @param scale One of the ExportScaleFragment SCALE constants
+     */
+    @Override
+    public void onExportScaleSelected(int scale) {
+        DrawingFragment fragment = getDrawingFragment();
+        if (fragment != null) {
+            fragment.exportHighResolution(scale);
+        } else {
+            Log.e(LOG_TAG, "onExportScaleSelected: Drawing fragment is null");
+        }
+    }
+
+    /**
+     * Helper function to map a shape menu item to its stroke type.
+     *
+     */
+    private static byte getShapeType(int menuItemId) {
+        switch (menuItemId) {
+            case R.id.shape_rectangle:
+                return Stroke.TYPE_RECTANGLE;
+            case R.id.shape_ellipse:
+                return Stroke.TYPE_ELLIPSE;
+            default:
+                return Stroke.TYPE_LINE;
+        }
+    }
+
     /**
      * Helper function to find the DrawingFragment.
      *
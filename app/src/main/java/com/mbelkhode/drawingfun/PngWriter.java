@@ -0,0 +1,169 @@
+package com.mbelkhode.drawingfun;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes an opaque 8 bit RGB png one band of rows at a time, so that an image much larger than
+ * the memory available can be encoded from a small band buffer. Bitmap.compress needs the whole
+ * image in a single bitmap.
+ *
+ * Each row uses the png Sub filter, which suits drawings with large flat areas. The compressed
+ * data is written out in IDAT chunks of IDAT_SIZE bytes as it is produced.
+ */
+public class PngWriter implements Closeable {
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int IDAT_SIZE = 64 * 1024;
+    private static final byte COLOR_TYPE_RGB = 2;
+    private static final byte FILTER_SUB = 1;
+    private static final int BYTES_PER_PIXEL = 3;
+
+    private final OutputStream mOut;
+    private final int mWidth;
+    private final int mHeight;
+    private final Deflater mDeflater = new Deflater(Deflater.BEST_SPEED);
+    private final DeflaterOutputStream mCompressed;
+    private final byte[] mRow;
+    private int mRowsWritten;
+    private boolean mClosed;
+
+    /**
+     * Writes the png header. The stream is not closed by close.
+     */
+    public PngWriter(OutputStream out, int width, int height) throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid size " + width + "x" + height);
+        }
+        mOut = out;
+        mWidth = width;
+        mHeight = height;
+        mRow = new byte[1 + width * BYTES_PER_PIXEL];
+        mCompressed = new DeflaterOutputStream(new IdatOutputStream(), mDeflater, IDAT_SIZE);
+
+        mOut.write(SIGNATURE);
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8;
+        header[9] = COLOR_TYPE_RGB;
+        writeChunk("IHDR", header, header.length);
+    }
+
+    /**
+     * Writes the next rows of the image. The alpha channel of the pixels is ignored.
+     *
+     * @param pixels ARGB pixels, as from Bitmap.getPixels
+     * @param offset The index of the first pixel of the first row
+     * @param stride The distance between the starts of two rows in pixels
+     * @param rowCount The number of rows to write
+     */
+    public void writeRows(int[] pixels, int offset, int stride, int rowCount) throws IOException {
+        if (mRowsWritten + rowCount > mHeight) {
+            throw new IOException("Image has only " + mHeight + " rows");
+        }
+        for (int y = 0; y < rowCount; y++) {
+            int index = offset + y * stride;
+            mRow[0] = FILTER_SUB;
+            int previous = 0;
+            for (int x = 0, i = 1; x < mWidth; x++, i += BYTES_PER_PIXEL) {
+                int color = pixels[index + x];
+                mRow[i] = (byte) ((color >> 16) - (previous >> 16));
+                mRow[i + 1] = (byte) ((color >> 8) - (previous >> 8));
+                mRow[i + 2] = (byte) (color - previous);
+                previous = color;
+            }
+            mCompressed.write(mRow);
+        }
+        mRowsWritten += rowCount;
+    }
+
+    /**
+     * Finishes the image. Fails if fewer rows than the height were written.
+     */
+    @Override
+    public void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        try {
+            if (mRowsWritten != mHeight) {
+                throw new IOException("Only " + mRowsWritten + " of " + mHeight + " rows written");
+            }
+            mCompressed.close();
+            writeChunk("IEND", new byte[0], 0);
+            mOut.flush();
+        } finally {
+            mDeflater.end();
+        }
+    }
+
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes("US-ASCII");
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        byte[] buffer = new byte[4];
+        putInt(buffer, 0, length);
+        mOut.write(buffer);
+        mOut.write(typeBytes);
+        mOut.write(data, 0, length);
+        putInt(buffer, 0, (int) crc.getValue());
+        mOut.write(buffer);
+    }
+
+    private static void putInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    /**
+     * Collects the compressed data and writes it out as IDAT chunks.
+     */
+    private class IdatOutputStream extends OutputStream {
+        private final byte[] mBuffer = new byte[IDAT_SIZE];
+        private int mLength;
+
+        @Override
+        public void write(int b) throws IOException {
+            mBuffer[mLength++] = (byte) b;
+            if (mLength == IDAT_SIZE) {
+                flush();
+            }
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            while (length > 0) {
+                int count = Math.min(length, IDAT_SIZE - mLength);
+                System.arraycopy(data, offset, mBuffer, mLength, count);
+                mLength += count;
+                offset += count;
+                length -= count;
+                if (mLength == IDAT_SIZE) {
+                    flush();
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (mLength > 0) {
+                writeChunk("IDAT", mBuffer, mLength);
+                mLength = 0;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
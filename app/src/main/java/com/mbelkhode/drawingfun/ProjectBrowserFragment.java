@@ -0,0 +1,259 @@
+package com.mbelkhode.drawingfun;
+
+import android.app.Activity;
+import android.app.DialogFragment;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AdapterView;
+import android.widget.BaseAdapter;
+import android.widget.GridView;
+import android.widget.ImageView;
+import android.widget.TextView;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * This dialog fragment shows the saved projects as a grid of thumbnails, newest first, and lets
+ * the user open one. The invoking activity implements the callback onProjectSelected to get back
+ * the project chosen by the user.
+ *
+ * The project directory is listed and sorted in the background. The grid only binds the visible
+ * cells, so it stays smooth with thousands of projects. Thumbnails come from the ThumbnailCache.
+ */
+public class ProjectBrowserFragment extends DialogFragment
+        implements AdapterView.OnItemClickListener {
+
+    private OnProjectSelectedListener mListener;
+    private ProjectAdapter mAdapter;
+    private ListProjectsTask mListTask;
+
+    /**
+     * The interface to be implemented by the associated activity to get back the selected project.
+     */
+    public interface OnProjectSelectedListener {
+        void onProjectSelected(File project);
+    }
+
+    /**
+     * Instantiates a new fragment and returns to the caller.
+     */
+    public static ProjectBrowserFragment newInstance() {
+        return new ProjectBrowserFragment();
+    }
+
+    @Override
+    public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container,
+                             Bundle savedInstanceState) {
+        View v = inflater.inflate(R.layout.fragment_project_browser, container, false);
+        mAdapter = new ProjectAdapter(getActivity());
+        GridView grid = (GridView) v.findViewById(R.id.projects);
+        grid.setEmptyView(v.findViewById(R.id.no_projects));
+        grid.setAdapter(mAdapter);
+        grid.setOnItemClickListener(this);
+
+        mListTask = new ListProjectsTask(DrawingView.getProjectDirectory(getActivity()));
+        mListTask.execute();
+        return v;
+    }
+
+    @Override
+    public void onAttach(@NonNull Activity activity) {
+        super.onAttach(activity);
+        try {
+            mListener = (OnProjectSelectedListener) activity;
+        } catch (ClassCastException e) {
+            throw new ClassCastException(activity.toString() + " must implement OnProjectSelectedListener");
+        }
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        getDialog().setTitle(R.string.open_project);
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        mListTask.cancel(false);
+        mAdapter.cancelLoads();
+    }
+
+    /**
+     * Called when the user selects a project.
+     */
+    @Override
+    public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+        getDialog().dismiss();
+        mListener.onProjectSelected(mAdapter.getItem(position));
+    }
+
+    /**
+     * Lists the project files with their last modified time, newest first.
+     */
+    private class ListProjectsTask extends AsyncTask<Void, Void, List<ProjectItem>> {
+
+        private final File mDirectory;
+
+        ListProjectsTask(File directory) {
+            mDirectory = directory;
+        }
+
+        @Override
+        protected List<ProjectItem> doInBackground(Void... params) {
+            List<ProjectItem> projects = new ArrayList<>();
+            File[] files = mDirectory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (file.getName().endsWith(ProjectFile.EXTENSION)) {
+                        projects.add(new ProjectItem(file, file.lastModified()));
+                    }
+                }
+            }
+            Collections.sort(projects, new Comparator<ProjectItem>() {
+                @Override
+                public int compare(ProjectItem lhs, ProjectItem rhs) {
+                    return Long.compare(rhs.lastModified, lhs.lastModified);
+                }
+            });
+            return projects;
+        }
+
+        @Override
+        protected void onPostExecute(List<ProjectItem> projects) {
+            mAdapter.setProjects(projects);
+        }
+    }
+
+    /**
+     * A project file and its last modified time, read once when the directory is listed.
+     */
+    private static class ProjectItem {
+        final File file;
+        final long lastModified;
+
+        ProjectItem(File file, long lastModified) {
+            this.file = file;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * The views of one grid cell and the thumbnail load pending for it, if any.
+     */
+    private static class ViewHolder {
+        ImageView thumbnail;
+        TextView name;
+        File project;
+        Future<?> pendingLoad;
+    }
+
+    /**
+     * Shows the projects and binds the thumbnails from the ThumbnailCache.
+     */
+    private static class ProjectAdapter extends BaseAdapter
+            implements ThumbnailCache.OnThumbnailLoadedListener {
+
+        private final LayoutInflater mInflater;
+        private final ThumbnailCache mThumbnailCache;
+        private final int mThumbnailSize;
+        private final List<ViewHolder> mHolders = new ArrayList<>();
+        private List<ProjectItem> mProjects = Collections.emptyList();
+
+        ProjectAdapter(Context context) {
+            mInflater = LayoutInflater.from(context);
+            mThumbnailCache = ThumbnailCache.getInstance(context);
+            mThumbnailSize = context.getResources().getDimensionPixelSize(R.dimen.thumbnail_size);
+        }
+
+        void setProjects(List<ProjectItem> projects) {
+            mProjects = projects;
+            notifyDataSetChanged();
+        }
+
+        void cancelLoads() {
+            for (ViewHolder holder : mHolders) {
+                if (holder.pendingLoad != null) {
+                    holder.pendingLoad.cancel(true);
+                    holder.pendingLoad = null;
+                }
+            }
+        }
+
+        @Override
+        public int getCount() {
+            return mProjects.size();
+        }
+
+        @Override
+        public File getItem(int position) {
+            return mProjects.get(position).file;
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return position;
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            ViewHolder holder;
+            if (convertView == null) {
+                convertView = mInflater.inflate(R.layout.item_project, parent, false);
+                holder = new ViewHolder();
+                holder.thumbnail = (ImageView) convertView.findViewById(R.id.thumbnail);
+                holder.name = (TextView) convertView.findViewById(R.id.name);
+                convertView.setTag(holder);
+                mHolders.add(holder);
+            } else {
+                holder = (ViewHolder) convertView.getTag();
+            }
+
+            ProjectItem project = mProjects.get(position);
+            if (project.file.equals(holder.project)) {
+                return convertView;
+            }
+
+            // The cell was recycled, the thumbnail it was waiting for is not needed any more
+            if (holder.pendingLoad != null) {
+                holder.pendingLoad.cancel(true);
+                holder.pendingLoad = null;
+            }
+            holder.project = project.file;
+            String name = project.file.getName();
+            holder.name.setText(name.substring(0, name.length() - ProjectFile.EXTENSION.length()));
+
+            Bitmap thumbnail = mThumbnailCache.getCached(project.file, project.lastModified,
+                    mThumbnailSize);
+            holder.thumbnail.setImageBitmap(thumbnail);
+            if (thumbnail == null) {
+                holder.pendingLoad = mThumbnailCache.load(project.file, project.lastModified,
+                        mThumbnailSize, this);
+            }
+            return convertView;
+        }
+
+        /**
+         * Shows a loaded thumbnail if its cell still shows the same project.
+         */
+        @Override
+        public void onThumbnailLoaded(File project, Bitmap thumbnail) {
+            for (ViewHolder holder : mHolders) {
+                if (project.equals(holder.project)) {
+                    holder.thumbnail.setImageBitmap(thumbnail);
+                    holder.pendingLoad = null;
+                }
+            }
+        }
+    }
+}
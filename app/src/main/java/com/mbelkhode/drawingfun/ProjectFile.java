@@ -0,0 +1,572 @@
+package com.mbelkhode.drawingfun;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The native project file of the app. Unlike the jpeg saved to the gallery, a project keeps the
+ * strokes and the pixels of every layer so that the drawing can be opened and edited again.
+ *
+ * The file is made of
+ *
+ *    1. Header - Magic number, format version and the offset of the last committed index.
+ *    2. Chunks - Deflate compressed tiles of TILE_SIZE x TILE_SIZE pixels, batches of strokes
+ *           and a small jpeg preview for the project browser, in the order they were saved.
+ *    3. Index - The drawing size and, for every live chunk, its type, layer, key, offset and
+ *           length.
+ *    4. Footer - The offset of the index and a magic number, always the last 12 bytes.
+ *
+ * Opening a project only reads the footer and the index; tiles are read on request with a single
+ * seek. A save appends only the chunks that changed and a new index after them, so the old index
+ * stays valid until the new one is completely written. The header only points to the new index
+ * once it is synced to the disk; if a save was cut short and the end of the file is not a valid
+ * footer, the project is opened from the index the header points to. Replaced chunks are left
+ * behind as garbage and the file is compacted once the garbage outweighs the live data. A new
+ * project and a compacted copy are written to a temporary file that only replaces the project
+ * once its index is synced, so an existing project is never cut down to an incomplete one.
+ *
+ * An instance is not thread safe and should only be used from one thread at a time.
+ */
+public class ProjectFile implements Closeable {
+
+    public static final int TILE_SIZE = 256;
+    public static final int LAYER_CANVAS = 0;
+    // The pixels under the saved strokes, only present after a canvas operation
+    public static final int LAYER_BASE = 1;
+    public static final String EXTENSION = ".dfp";
+
+    private static final int MAGIC = 0x44465046;
+    private static final int INDEX_MAGIC = 0x44464958;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 16;
+    // Where the header keeps the offset of the last committed index
+    private static final int COMMITTED_INDEX_OFFSET = 8;
+    private static final int INDEX_HEADER_SIZE = 12;
+    private static final int FOOTER_SIZE = 12;
+    private static final int ENTRY_SIZE = 22;
+    private static final long MIN_COMPACT_SIZE = 1024 * 1024;
+
+    private static final byte CHUNK_TILE = 1;
+    private static final byte CHUNK_STROKES = 2;
+    private static final byte CHUNK_PREVIEW = 3;
+
+    private final File mFile;
+    private final int mWidth;
+    private final int mHeight;
+    private final Map<Integer, Entry> mTiles = new HashMap<>();
+    private final List<Entry> mStrokes = new ArrayList<>();
+    private Entry mPreview;
+    private final Deflater mDeflater = new Deflater(Deflater.BEST_SPEED);
+    private final Inflater mInflater = new Inflater();
+    private final byte[] mTileBytes = new byte[TILE_SIZE * TILE_SIZE * 4];
+    private byte[] mBuffer = new byte[64 * 1024];
+    private RandomAccessFile mRaf;
+    private long mAppendOffset;
+    private boolean mChanged;
+    // The file being written instead of mFile until the first commit, for a new project
+    private File mTempFile;
+
+    /**
+     * The location of one live chunk in the file.
+     */
+    private static class Entry {
+        final byte type;
+        final byte layer;
+        final int key;
+        final long offset;
+        final int length;
+        final int rawLength;
+
+        Entry(byte type, byte layer, int key, long offset, int length, int rawLength) {
+            this.type = type;
+            this.layer = layer;
+            this.key = key;
+            this.offset = offset;
+            this.length = length;
+            this.rawLength = rawLength;
+        }
+    }
+
+    private ProjectFile(File file, RandomAccessFile raf, int width, int height) {
+        mFile = file;
+        mRaf = raf;
+        mWidth = width;
+        mHeight = height;
+    }
+
+    /**
+     * Creates a new empty project. If the file already exists, it is only replaced on the first
+     * commit; until then, and if the project is closed without a commit, it is left as it was.
+     */
+    public static ProjectFile create(File file, int width, int height) throws IOException {
+        File temp = getTempFile(file);
+        ProjectFile project = new ProjectFile(file, createFile(temp), width, height);
+        project.mTempFile = temp;
+        project.mAppendOffset = HEADER_SIZE;
+        project.mChanged = true;
+        return project;
+    }
+
+    /**
+     * Opens an existing project to be read and saved again. Only the header, footer and index are
+     * read. If the last save did not complete, the project is opened as it was after the save
+     * before it.
+     */
+    public static ProjectFile open(File file) throws IOException {
+        return open(file, "rw");
+    }
+
+    /**
+     * Opens an existing project like open, but only to read it, so that a reader can never change
+     * a project that is being saved at the same time. Writing to it throws an IOException.
+     */
+    public static ProjectFile openReadOnly(File file) throws IOException {
+        return open(file, "r");
+    }
+
+    private static ProjectFile open(File file, String mode) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, mode);
+        try {
+            long length = raf.length();
+            if (length < HEADER_SIZE + FOOTER_SIZE || raf.readInt() != MAGIC) {
+                throw new IOException(file + " is not a project file");
+            }
+            int version = raf.readInt();
+            if (version != VERSION) {
+                throw new IOException(file + " has unsupported version " + version);
+            }
+            long committedOffset = raf.readLong();
+            raf.seek(length - FOOTER_SIZE);
+            long indexOffset = raf.readLong();
+            long indexEnd = length;
+            if (raf.readInt() != INDEX_MAGIC || !isIndexAt(raf, indexOffset, length)) {
+                // The last save was cut short, fall back to the last one that completed
+                indexOffset = committedOffset;
+                indexEnd = getIndexEnd(raf, committedOffset, length);
+                if (indexEnd < 0 || !isIndexAt(raf, indexOffset, indexEnd)) {
+                    throw new IOException(file + " has a damaged index");
+                }
+            }
+
+            byte[] index = new byte[(int) (indexEnd - FOOTER_SIZE - indexOffset)];
+            raf.seek(indexOffset);
+            raf.readFully(index);
+            ByteBuffer buffer = ByteBuffer.wrap(index);
+            ProjectFile project = new ProjectFile(file, raf, buffer.getInt(), buffer.getInt());
+            int entryCount = buffer.getInt();
+            for (int i = 0; i < entryCount; i++) {
+                project.addEntry(new Entry(buffer.get(), buffer.get(), buffer.getInt(),
+                        buffer.getLong(), buffer.getInt(), buffer.getInt()));
+            }
+            // Anything after the index is left over from a failed save and is written over
+            project.mAppendOffset = indexEnd;
+            return project;
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e instanceof IOException ? (IOException) e : new IOException(e);
+        }
+    }
+
+    /**
+     * Returns where the index at the given offset ends, or -1 if it cannot be an index.
+     */
+    private static long getIndexEnd(RandomAccessFile raf, long indexOffset, long length)
+            throws IOException {
+        if (indexOffset < HEADER_SIZE || indexOffset > length - INDEX_HEADER_SIZE - FOOTER_SIZE) {
+            return -1;
+        }
+        raf.seek(indexOffset + 8);
+        int entryCount = raf.readInt();
+        if (entryCount < 0) {
+            return -1;
+        }
+        return indexOffset + INDEX_HEADER_SIZE + (long) entryCount * ENTRY_SIZE + FOOTER_SIZE;
+    }
+
+    /**
+     * Returns true if a complete index starts at the given offset and its footer ends at indexEnd.
+     */
+    private static boolean isIndexAt(RandomAccessFile raf, long indexOffset, long indexEnd)
+            throws IOException {
+        if (getIndexEnd(raf, indexOffset, indexEnd) != indexEnd) {
+            return false;
+        }
+        raf.seek(indexEnd - FOOTER_SIZE);
+        return raf.readLong() == indexOffset && raf.readInt() == INDEX_MAGIC;
+    }
+
+    /**
+     * Returns the number of tiles needed to cover the given number of pixels.
+     */
+    public static int tileCount(int pixels) {
+        return (pixels + TILE_SIZE - 1) / TILE_SIZE;
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getTileColumns() {
+        return tileCount(mWidth);
+    }
+
+    public int getTileRows() {
+        return tileCount(mHeight);
+    }
+
+    public boolean hasTile(int layer, int tile) {
+        return mTiles.containsKey(tileKey(layer, tile));
+    }
+
+    /**
+     * Returns true if at least one tile of the layer was saved.
+     */
+    public boolean hasLayer(int layer) {
+        for (Entry entry : mTiles.values()) {
+            if (entry.layer == layer) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads one tile. The pixels are in ARGB with a stride of TILE_SIZE. Pixels of edge tiles that
+     * fall outside the drawing are undefined.
+     *
+     * @param pixels An array of TILE_SIZE * TILE_SIZE pixels to fill
+     * @return false if the tile was never saved, in which case pixels is not changed
+     */
+    public boolean readTile(int layer, int tile, int[] pixels) throws IOException {
+        Entry entry = mTiles.get(tileKey(layer, tile));
+        if (entry == null) {
+            return false;
+        }
+        inflate(entry, mTileBytes);
+        ByteBuffer.wrap(mTileBytes).asIntBuffer().get(pixels, 0, TILE_SIZE * TILE_SIZE);
+        return true;
+    }
+
+    /**
+     * Reads all the strokes of the project in the order they were drawn.
+     */
+    public List<Stroke> readStrokes() throws IOException {
+        List<Stroke> strokes = new ArrayList<>();
+        for (Entry entry : mStrokes) {
+            byte[] raw = new byte[entry.rawLength];
+            inflate(entry, raw);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw));
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                byte type = in.readByte();
+                int color = in.readInt();
+                float width = in.readFloat();
+                int pointCount = in.readInt();
+                float[] points = new float[Math.max(pointCount * 2, 2)];
+                for (int p = 0; p < pointCount * 2; p++) {
+                    points[p] = in.readFloat();
+                }
+                strokes.add(new Stroke(type, color, width, points, pointCount));
+            }
+        }
+        return strokes;
+    }
+
+    /**
+     * Writes one tile, replacing the saved one if any. Takes effect on commit.
+     *
+     * @param pixels TILE_SIZE * TILE_SIZE ARGB pixels with a stride of TILE_SIZE
+     */
+    public void writeTile(int layer, int tile, int[] pixels) throws IOException {
+        ByteBuffer.wrap(mTileBytes).asIntBuffer().put(pixels, 0, TILE_SIZE * TILE_SIZE);
+        addEntry(appendChunk(CHUNK_TILE, (byte) layer, tile, mTileBytes, mTileBytes.length));
+    }
+
+    /**
+     * Appends the strokes from the given position to the end of the list to the saved ones.
+     * Takes effect on commit.
+     */
+    public void appendStrokes(List<Stroke> strokes, int from) throws IOException {
+        if (from >= strokes.size()) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(strokes.size() - from);
+        for (int i = from; i < strokes.size(); i++) {
+            Stroke stroke = strokes.get(i);
+            out.writeByte(stroke.getType());
+            out.writeInt(stroke.getColor());
+            out.writeFloat(stroke.getWidth());
+            out.writeInt(stroke.getPointCount());
+            for (int p = 0; p < stroke.getPointCount(); p++) {
+                out.writeFloat(stroke.getX(p));
+                out.writeFloat(stroke.getY(p));
+            }
+        }
+        out.flush();
+        addEntry(appendChunk(CHUNK_STROKES, (byte) 0, mStrokes.size(), bytes.toByteArray(),
+                bytes.size()));
+    }
+
+    /**
+     * Reads the preview image saved with writePreview.
+     *
+     * @return The encoded image, or null if the project has no preview
+     */
+    public byte[] readPreview() throws IOException {
+        if (mPreview == null) {
+            return null;
+        }
+        byte[] preview = new byte[mPreview.rawLength];
+        inflate(mPreview, preview);
+        return preview;
+    }
+
+    /**
+     * Writes the preview image, replacing the saved one if any. Takes effect on commit.
+     *
+     * @param preview An encoded image small enough to be shown as a thumbnail
+     */
+    public void writePreview(byte[] preview) throws IOException {
+        addEntry(appendChunk(CHUNK_PREVIEW, (byte) 0, 0, preview, preview.length));
+    }
+
+    /**
+     * Forgets all the saved strokes, for example after the drawing was erased. Takes effect on
+     * commit.
+     */
+    public void clearStrokes() {
+        mStrokes.clear();
+        mChanged = true;
+    }
+
+    /**
+     * Returns the number of saved strokes batches. Each save that added strokes adds one batch.
+     */
+    public int getStrokeBatchCount() {
+        return mStrokes.size();
+    }
+
+    /**
+     * Makes all the changes since the last commit durable by writing a new index and footer at
+     * the end of the file. Compacts the file if most of it is garbage.
+     */
+    public void commit() throws IOException {
+        if (!mChanged) {
+            return;
+        }
+        long liveBytes = writeIndex(mRaf);
+        mChanged = false;
+        if (mTempFile != null) {
+            if (!mTempFile.renameTo(mFile)) {
+                throw new IOException("Could not replace " + mFile);
+            }
+            mTempFile = null;
+        }
+
+        if (mAppendOffset > MIN_COMPACT_SIZE && mAppendOffset > 2 * liveBytes) {
+            compact();
+        }
+    }
+
+    /**
+     * Returns the size of the file in bytes, including the garbage left by earlier saves.
+     */
+    public long length() {
+        return mAppendOffset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mDeflater.end();
+        mInflater.end();
+        mRaf.close();
+        if (mTempFile != null && !mTempFile.delete()) {
+            throw new IOException("Could not delete " + mTempFile);
+        }
+    }
+
+    /**
+     * Rewrites the file with only the live chunks, copying them without recompressing.
+     */
+    private void compact() throws IOException {
+        File temp = getTempFile(mFile);
+        List<Entry> entries = getEntries();
+        RandomAccessFile out = createFile(temp);
+        try {
+            mTiles.clear();
+            mStrokes.clear();
+            mPreview = null;
+            for (Entry entry : entries) {
+                byte[] chunk = readChunk(entry);
+                long offset = out.getFilePointer();
+                out.write(chunk, 0, entry.length);
+                addEntry(new Entry(entry.type, entry.layer, entry.key, offset, entry.length,
+                        entry.rawLength));
+            }
+            mAppendOffset = out.getFilePointer();
+            // The copy must be complete before it replaces the file
+            writeIndex(out);
+        } catch (IOException e) {
+            out.close();
+            temp.delete();
+            throw e;
+        }
+        mRaf.close();
+        mRaf = out;
+        if (!temp.renameTo(mFile)) {
+            throw new IOException("Could not replace " + mFile);
+        }
+        mChanged = false;
+    }
+
+    private static File getTempFile(File file) {
+        return new File(file.getPath() + ".tmp");
+    }
+
+    /**
+     * Opens a file for writing, empties it and writes the header with no committed index.
+     */
+    private static RandomAccessFile createFile(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+            raf.writeInt(MAGIC);
+            raf.writeInt(VERSION);
+            raf.writeLong(0);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+        return raf;
+    }
+
+    /**
+     * Writes the index and footer of the live chunks at the append offset, syncs them to the
+     * disk and only then points the header to them.
+     *
+     * @return The number of bytes in the file that are still in use
+     */
+    private long writeIndex(RandomAccessFile raf) throws IOException {
+        List<Entry> entries = getEntries();
+        ByteBuffer index = ByteBuffer.allocate(INDEX_HEADER_SIZE + entries.size() * ENTRY_SIZE
+                + FOOTER_SIZE);
+        index.putInt(mWidth).putInt(mHeight).putInt(entries.size());
+        long liveBytes = HEADER_SIZE + index.capacity();
+        for (Entry entry : entries) {
+            index.put(entry.type).put(entry.layer).putInt(entry.key).putLong(entry.offset)
+                    .putInt(entry.length).putInt(entry.rawLength);
+            liveBytes += entry.length;
+        }
+        long indexOffset = mAppendOffset;
+        index.putLong(indexOffset).putInt(INDEX_MAGIC);
+
+        raf.seek(indexOffset);
+        raf.write(index.array());
+        raf.setLength(indexOffset + index.capacity());
+        raf.getFD().sync();
+        raf.seek(COMMITTED_INDEX_OFFSET);
+        raf.writeLong(indexOffset);
+        raf.getFD().sync();
+        mAppendOffset += index.capacity();
+        return liveBytes;
+    }
+
+    private List<Entry> getEntries() {
+        List<Entry> entries = new ArrayList<>(mTiles.size() + mStrokes.size() + 1);
+        if (mPreview != null) {
+            entries.add(mPreview);
+        }
+        entries.addAll(mStrokes);
+        entries.addAll(mTiles.values());
+        return entries;
+    }
+
+    private void addEntry(Entry entry) {
+        if (entry.type == CHUNK_TILE) {
+            mTiles.put(tileKey(entry.layer, entry.key), entry);
+        } else if (entry.type == CHUNK_STROKES) {
+            mStrokes.add(entry);
+        } else if (entry.type == CHUNK_PREVIEW) {
+            mPreview = entry;
+        }
+        mChanged = true;
+    }
+
+    private Entry appendChunk(byte type, byte layer, int key, byte[] raw, int rawLength)
+            throws IOException {
+        mDeflater.reset();
+        mDeflater.setInput(raw, 0, rawLength);
+        mDeflater.finish();
+        int length = 0;
+        while (!mDeflater.finished()) {
+            if (length == mBuffer.length) {
+                mBuffer = Arrays.copyOf(mBuffer, mBuffer.length * 2);
+            }
+            length += mDeflater.deflate(mBuffer, length, mBuffer.length - length);
+        }
+        long offset = mAppendOffset;
+        mRaf.seek(offset);
+        mRaf.write(mBuffer, 0, length);
+        mAppendOffset += length;
+        return new Entry(type, layer, key, offset, length, rawLength);
+    }
+
+    private byte[] readChunk(Entry entry) throws IOException {
+        if (mBuffer.length < entry.length) {
+            mBuffer = new byte[entry.length];
+        }
+        mRaf.seek(entry.offset);
+        mRaf.readFully(mBuffer, 0, entry.length);
+        return mBuffer;
+    }
+
+    private void inflate(Entry entry, byte[] raw) throws IOException {
+        byte[] chunk = readChunk(entry);
+        mInflater.reset();
+        mInflater.setInput(chunk, 0, entry.length);
+        try {
+            int length = 0;
+            while (length < entry.rawLength && !mInflater.finished()) {
+                int inflated = mInflater.inflate(raw, length, entry.rawLength - length);
+                if (inflated == 0 && (mInflater.needsInput() || mInflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != entry.rawLength) {
+                throw new IOException(mFile + " has a truncated chunk at " + entry.offset);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(mFile + " has a damaged chunk at " + entry.offset, e);
+        }
+    }
+
+    private static int tileKey(int layer, int tile) {
+        return (layer << 24) | tile;
+    }
+}
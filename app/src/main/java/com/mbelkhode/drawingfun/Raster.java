@@ -0,0 +1,27 @@
+package com.mbelkhode.drawingfun;
+
+/**
+ * A plain ARGB pixel buffer, one int per pixel, row by row with no padding. This is the same
+ * layout Bitmap.getPixels and setPixels use with a stride of the width, so the canvas operations
+ * can work on the pixels of the drawing without any Android dependency.
+ */
+public class Raster {
+
+    public final int width;
+    public final int height;
+    public final int[] pixels;
+
+    public Raster(int width, int height) {
+        this(width, height, new int[width * height]);
+    }
+
+    public Raster(int width, int height, int[] pixels) {
+        if (pixels.length < width * height) {
+            throw new IllegalArgumentException("Raster of " + width + "x" + height
+                    + " needs " + width * height + " pixels, got " + pixels.length);
+        }
+        this.width = width;
+        this.height = height;
+        this.pixels = pixels;
+    }
+}
@@ -0,0 +1,289 @@
+package com.mbelkhode.drawingfun;
+
+/**
+ * A whole canvas operation on a Raster. Every operation is made of one or more passes; each pass
+ * reads the whole output of the previous pass and writes its own output one band of rows at a
+ * time, so the RasterOperationEngine can run the bands of a pass in parallel. Supports
+ *
+ *    1. ROTATE_90 - Rotates the canvas a quarter turn clockwise
+ *    2. FLIP_HORIZONTAL / FLIP_VERTICAL - Mirrors the canvas left to right or top to bottom
+ *    3. scale - Resizes the canvas with bilinear filtering
+ *    4. GRAYSCALE - Converts the colors to gray
+ *    5. INVERT - Inverts the colors
+ *    6. blur - A box blur, done as a horizontal and a vertical pass
+ *
+ * The alpha channel is kept by the color filters and blurred like any other channel by blur.
+ */
+public abstract class RasterOperation {
+
+    public static final RasterOperation ROTATE_90 = new Rotate90();
+    public static final RasterOperation FLIP_HORIZONTAL = new FlipHorizontal();
+    public static final RasterOperation FLIP_VERTICAL = new FlipVertical();
+    public static final RasterOperation GRAYSCALE = new Grayscale();
+    public static final RasterOperation INVERT = new Invert();
+
+    /**
+     * Returns an operation that resizes the canvas to the given size.
+     */
+    public static RasterOperation scale(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid size " + width + "x" + height);
+        }
+        return new Scale(width, height);
+    }
+
+    /**
+     * Returns an operation that blurs every pixel with its neighbors up to radius pixels away.
+     */
+    public static RasterOperation blur(int radius) {
+        if (radius <= 0) {
+            throw new IllegalArgumentException("Invalid radius " + radius);
+        }
+        return new BoxBlur(radius);
+    }
+
+    public int getPassCount() {
+        return 1;
+    }
+
+    public int getOutputWidth(int pass, Raster source) {
+        return source.width;
+    }
+
+    public int getOutputHeight(int pass, Raster source) {
+        return source.height;
+    }
+
+    /**
+     * Writes the rows from firstRow up to but not including endRow of the output of one pass.
+     * Must only read the source and only write those rows, as other bands run at the same time.
+     */
+    public abstract void applyPass(int pass, Raster source, Raster output, int firstRow, int endRow);
+
+    private static class Rotate90 extends RasterOperation {
+        @Override
+        public int getOutputWidth(int pass, Raster source) {
+            return source.height;
+        }
+
+        @Override
+        public int getOutputHeight(int pass, Raster source) {
+            return source.width;
+        }
+
+        @Override
+        public void applyPass(int pass, Raster source, Raster output, int firstRow, int endRow) {
+            int[] src = source.pixels;
+            int[] dst = output.pixels;
+            int lastSourceRow = source.height - 1;
+            for (int y = firstRow; y < endRow; y++) {
+                int dstIndex = y * output.width;
+                for (int x = 0; x < output.width; x++) {
+                    dst[dstIndex + x] = src[(lastSourceRow - x) * source.width + y];
+                }
+            }
+        }
+    }
+
+    private static class FlipHorizontal extends RasterOperation {
+        @Override
+        public void applyPass(int pass, Raster source, Raster output, int firstRow, int endRow) {
+            int width = source.width;
+            for (int y = firstRow; y < endRow; y++) {
+                int row = y * width;
+                int last = row + width - 1;
+                for (int x = 0; x < width; x++) {
+                    output.pixels[row + x] = source.pixels[last - x];
+                }
+            }
+        }
+    }
+
+    private static class FlipVertical extends RasterOperation {
+        @Override
+        public void applyPass(int pass, Raster source, Raster output, int firstRow, int endRow) {
+            int width = source.width;
+            for (int y = firstRow; y < endRow; y++) {
+                System.arraycopy(source.pixels, (source.height - 1 - y) * width,
+                        output.pixels, y * width, width);
+            }
+        }
+    }
+
+    private static class Grayscale extends RasterOperation {
+        @Override
+        public void applyPass(int pass, Raster source, Raster output, int firstRow, int endRow) {
+            int end = endRow * source.width;
+            for (int i = firstRow * source.width; i < end; i++) {
+                int color = source.pixels[i];
+                // Rec. 601 luma in 8 bit fixed point
+                int luma = (((color >> 16) & 0xFF) * 77 + ((color >> 8) & 0xFF) * 150
+                        + (color & 0xFF) * 29) >> 8;
+                output.pixels[i] = (color & 0xFF000000) | (luma << 16) | (luma << 8) | luma;
+            }
+        }
+    }
+
+    private static class Invert extends RasterOperation {
+        @Override
+        public void applyPass(int pass, Raster source, Raster output, int firstRow, int endRow) {
+            int end = endRow * source.width;
+            for (int i = firstRow * source.width; i < end; i++) {
+                output.pixels[i] = source.pixels[i] ^ 0x00FFFFFF;
+            }
+        }
+    }
+
+    private static class Scale extends RasterOperation {
+        private final int mWidth;
+        private final int mHeight;
+
+        Scale(int width, int height) {
+            mWidth = width;
+            mHeight = height;
+        }
+
+        @Override
+        public int getOutputWidth(int pass, Raster source) {
+            return mWidth;
+        }
+
+        @Override
+        public int getOutputHeight(int pass, Raster source) {
+            return mHeight;
+        }
+
+        @Override
+        public void applyPass(int pass, Raster source, Raster output, int firstRow, int endRow) {
+            float scaleX = (float) source.width / output.width;
+            float scaleY = (float) source.height / output.height;
+            int maxX = source.width - 1;
+            int maxY = source.height - 1;
+            for (int y = firstRow; y < endRow; y++) {
+                float sy = Math.min(Math.max((y + 0.5f) * scaleY - 0.5f, 0), maxY);
+                int y0 = (int) sy;
+                int y1 = Math.min(y0 + 1, maxY);
+                // Weights in 8 bit fixed point
+                int wy = (int) ((sy - y0) * 256);
+                int row0 = y0 * source.width;
+                int row1 = y1 * source.width;
+                int dstIndex = y * output.width;
+                for (int x = 0; x < output.width; x++) {
+                    float sx = Math.min(Math.max((x + 0.5f) * scaleX - 0.5f, 0), maxX);
+                    int x0 = (int) sx;
+                    int x1 = Math.min(x0 + 1, maxX);
+                    int wx = (int) ((sx - x0) * 256);
+                    output.pixels[dstIndex + x] = bilinear(source.pixels[row0 + x0],
+                            source.pixels[row0 + x1], source.pixels[row1 + x0],
+                            source.pixels[row1 + x1], wx, wy);
+                }
+            }
+        }
+
+        private static int bilinear(int c00, int c10, int c01, int c11, int wx, int wy) {
+            int result = 0;
+            for (int shift = 0; shift < 32; shift += 8) {
+                int top = ((c00 >>> shift) & 0xFF) * (256 - wx) + ((c10 >>> shift) & 0xFF) * wx;
+                int bottom = ((c01 >>> shift) & 0xFF) * (256 - wx) + ((c11 >>> shift) & 0xFF) * wx;
+                int value = (top * (256 - wy) + bottom * wy + (1 << 15)) >> 16;
+                result |= value << shift;
+            }
+            return result;
+        }
+    }
+
+    private static class BoxBlur extends RasterOperation {
+        private final int mRadius;
+
+        BoxBlur(int radius) {
+            mRadius = radius;
+        }
+
+        @Override
+        public int getPassCount() {
+            return 2;
+        }
+
+        @Override
+        public void applyPass(int pass, Raster source, Raster output, int firstRow, int endRow) {
+            if (pass == 0) {
+                blurRows(source, output, firstRow, endRow);
+            } else {
+                blurColumns(source, output, firstRow, endRow);
+            }
+        }
+
+        /**
+         * Blurs each row on its own with a running sum over the window, clamping at the edges.
+         */
+        private void blurRows(Raster source, Raster output, int firstRow, int endRow) {
+            int width = source.width;
+            int size = mRadius * 2 + 1;
+            for (int y = firstRow; y < endRow; y++) {
+                int row = y * width;
+                int a = 0;
+                int r = 0;
+                int g = 0;
+                int b = 0;
+                for (int i = -mRadius; i <= mRadius; i++) {
+                    int color = source.pixels[row + clamp(i, width - 1)];
+                    a += color >>> 24;
+                    r += (color >> 16) & 0xFF;
+                    g += (color >> 8) & 0xFF;
+                    b += color & 0xFF;
+                }
+                for (int x = 0; x < width; x++) {
+                    output.pixels[row + x] = ((a / size) << 24) | ((r / size) << 16)
+                            | ((g / size) << 8) | (b / size);
+                    int out = source.pixels[row + clamp(x - mRadius, width - 1)];
+                    int in = source.pixels[row + clamp(x + mRadius + 1, width - 1)];
+                    a += (in >>> 24) - (out >>> 24);
+                    r += ((in >> 16) & 0xFF) - ((out >> 16) & 0xFF);
+                    g += ((in >> 8) & 0xFF) - ((out >> 8) & 0xFF);
+                    b += (in & 0xFF) - (out & 0xFF);
+                }
+            }
+        }
+
+        /**
+         * Blurs the columns of a band of rows with one running sum per column, so the source is
+         * still read row by row.
+         */
+        private void blurColumns(Raster source, Raster output, int firstRow, int endRow) {
+            int width = source.width;
+            int lastRow = source.height - 1;
+            int size = mRadius * 2 + 1;
+            int[] sums = new int[width * 4];
+            for (int i = firstRow - mRadius; i <= firstRow + mRadius; i++) {
+                int row = clamp(i, lastRow) * width;
+                for (int x = 0; x < width; x++) {
+                    addColor(sums, x, source.pixels[row + x], 1);
+                }
+            }
+            for (int y = firstRow; y < endRow; y++) {
+                int row = y * width;
+                int outRow = clamp(y - mRadius, lastRow) * width;
+                int inRow = clamp(y + mRadius + 1, lastRow) * width;
+                for (int x = 0; x < width; x++) {
+                    int s = x * 4;
+                    output.pixels[row + x] = ((sums[s] / size) << 24) | ((sums[s + 1] / size) << 16)
+                            | ((sums[s + 2] / size) << 8) | (sums[s + 3] / size);
+                    addColor(sums, x, source.pixels[outRow + x], -1);
+                    addColor(sums, x, source.pixels[inRow + x], 1);
+                }
+            }
+        }
+
+        private static void addColor(int[] sums, int x, int color, int sign) {
+            int s = x * 4;
+            sums[s] += sign * (color >>> 24);
+            sums[s + 1] += sign * ((color >> 16) & 0xFF);
+            sums[s + 2] += sign * ((color >> 8) & 0xFF);
+            sums[s + 3] += sign * (color & 0xFF);
+        }
+
+        private static int clamp(int value, int max) {
+            return Math.min(Math.max(value, 0), max);
+        }
+    }
+}
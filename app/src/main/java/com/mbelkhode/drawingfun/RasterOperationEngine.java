@@ -0,0 +1,87 @@
+package com.mbelkhode.drawingfun;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs RasterOperations on a pool of worker threads. Each pass of an operation is split into
+ * bands of rows that are processed in parallel, and the next pass starts once all the bands are
+ * done. There are a few more bands than threads so that a slow band does not leave the other
+ * threads idle.
+ *
+ * apply blocks until the operation is done, so it must not be called on the UI thread.
+ */
+public class RasterOperationEngine {
+
+    private static final int BANDS_PER_THREAD = 4;
+    private static final int MIN_BAND_ROWS = 16;
+
+    private final ExecutorService mExecutor;
+    private final int mThreadCount;
+
+    public RasterOperationEngine(int threadCount) {
+        mThreadCount = Math.max(1, threadCount);
+        mExecutor = Executors.newFixedThreadPool(mThreadCount);
+    }
+
+    /**
+     * Applies the operation and returns its result in a new raster. The source is not changed.
+     * Only the input and output of the running pass are referenced, so the source and every pass
+     * output can be collected once the next pass is done with it, if the caller does not keep them.
+     *
+     * @throws InterruptedException if the calling thread was interrupted while waiting
+     */
+    public Raster apply(RasterOperation operation, Raster source) throws InterruptedException {
+        Raster input = source;
+        source = null;
+        for (int pass = 0; pass < operation.getPassCount(); pass++) {
+            Raster output = new Raster(operation.getOutputWidth(pass, input),
+                    operation.getOutputHeight(pass, input));
+            runPass(operation, pass, input, output);
+            input = output;
+        }
+        return input;
+    }
+
+    /**
+     * Stops the worker threads. The engine cannot be used afterwards.
+     */
+    public void shutdown() {
+        mExecutor.shutdown();
+    }
+
+    private void runPass(final RasterOperation operation, final int pass, final Raster input,
+                         final Raster output) throws InterruptedException {
+        int bandCount = mThreadCount * BANDS_PER_THREAD;
+        int bandRows = Math.max(MIN_BAND_ROWS, (output.height + bandCount - 1) / bandCount);
+        if (mThreadCount == 1 || bandRows >= output.height) {
+            operation.applyPass(pass, input, output, 0, output.height);
+            return;
+        }
+
+        List<Callable<Void>> bands = new ArrayList<>();
+        for (int first = 0; first < output.height; first += bandRows) {
+            final int firstRow = first;
+            final int endRow = Math.min(first + bandRows, output.height);
+            bands.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    operation.applyPass(pass, input, output, firstRow, endRow);
+                    return null;
+                }
+            });
+        }
+        for (Future<Void> band : mExecutor.invokeAll(bands)) {
+            try {
+                band.get();
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Canvas operation failed", e.getCause());
+            }
+        }
+    }
+}
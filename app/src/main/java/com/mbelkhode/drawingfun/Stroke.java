@@ -0,0 +1,229 @@
+package com.mbelkhode.drawingfun;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * One stroke drawn by the user, kept as data so that it can be saved in a project and drawn
+ * again later. A freehand stroke keeps the points that the view accepted while the finger
+ * moved; the path is rebuilt from them the same way the view builds it while drawing. A line,
+ * rectangle or ellipse keeps only its two corner points, so it stays sharp at any resolution.
+ *
+ * A stroke is only added to while the finger is down and is not changed after touchUp, except to
+ * be marked as erased by the stroke eraser until it is taken out of the list of strokes.
+ */
+public class Stroke {
+
+    public static final byte TYPE_FREEHAND = 0;
+    public static final byte TYPE_LINE = 1;
+    public static final byte TYPE_RECTANGLE = 2;
+    public static final byte TYPE_ELLIPSE = 3;
+
+    private static final int INITIAL_CAPACITY = 32;
+    private static final int ELLIPSE_SEGMENTS = 32;
+
+    private final byte mType;
+    private final int mColor;
+    private final float mWidth;
+    private float[] mPoints;
+    private int mPointCount;
+    private float mLeft = Float.MAX_VALUE;
+    private float mTop = Float.MAX_VALUE;
+    private float mRight = -Float.MAX_VALUE;
+    private float mBottom = -Float.MAX_VALUE;
+    private boolean mErased;
+
+    public Stroke(byte type, int color, float width) {
+        this(type, color, width, new float[INITIAL_CAPACITY * 2], 0);
+    }
+
+    /**
+     * Creates a stroke from already known points, for example when loading a project.
+     *
+     * @param points The x and y coordinates, one after the other
+     * @param pointCount The number of points used in the array
+     */
+    public Stroke(byte type, int color, float width, float[] points, int pointCount) {
+        mType = type;
+        mColor = color;
+        mWidth = width;
+        mPoints = points;
+        mPointCount = 0;
+        for (int i = 0; i < pointCount; i++) {
+            includePoint(points[i * 2], points[i * 2 + 1]);
+        }
+        mPointCount = pointCount;
+    }
+
+    /**
+     * Adds a point to the end of the stroke.
+     */
+    public void addPoint(float x, float y) {
+        if (mPointCount * 2 == mPoints.length) {
+            mPoints = Arrays.copyOf(mPoints, mPoints.length * 2);
+        }
+        mPoints[mPointCount * 2] = x;
+        mPoints[mPointCount * 2 + 1] = y;
+        mPointCount++;
+        includePoint(x, y);
+    }
+
+    /**
+     * Marks the stroke to be taken out of its list by the next removeErased.
+     */
+    public void markErased() {
+        mErased = true;
+    }
+
+    public boolean isErased() {
+        return mErased;
+    }
+
+    public byte getType() {
+        return mType;
+    }
+
+    public int getColor() {
+        return mColor;
+    }
+
+    public float getWidth() {
+        return mWidth;
+    }
+
+    public int getPointCount() {
+        return mPointCount;
+    }
+
+    public float getX(int index) {
+        return mPoints[index * 2];
+    }
+
+    public float getY(int index) {
+        return mPoints[index * 2 + 1];
+    }
+
+    /**
+     * The bounds of the stroke, including half the stroke width on every side so that they
+     * cover every pixel the stroke touches.
+     */
+    public float getLeft() {
+        return mLeft - mWidth / 2;
+    }
+
+    public float getTop() {
+        return mTop - mWidth / 2;
+    }
+
+    public float getRight() {
+        return mRight + mWidth / 2;
+    }
+
+    public float getBottom() {
+        return mBottom + mWidth / 2;
+    }
+
+    /**
+     * Returns true if the stroke passes within the given distance of a point, counting half its
+     * width. A freehand stroke is measured along the straight lines between its points and an
+     * ellipse along a polygon of ELLIPSE_SEGMENTS sides, which is close enough for hit testing.
+     */
+    public boolean isNear(float x, float y, float distance) {
+        if (mPointCount == 0 || x < getLeft() - distance || x > getRight() + distance
+                || y < getTop() - distance || y > getBottom() + distance) {
+            return false;
+        }
+        float reach = distance + mWidth / 2;
+        float reachSquared = reach * reach;
+        if (mType == TYPE_RECTANGLE && mPointCount >= 2) {
+            float x0 = mPoints[0];
+            float y0 = mPoints[1];
+            float x1 = mPoints[2];
+            float y1 = mPoints[3];
+            return distanceSquared(x, y, x0, y0, x1, y0) <= reachSquared
+                    || distanceSquared(x, y, x1, y0, x1, y1) <= reachSquared
+                    || distanceSquared(x, y, x1, y1, x0, y1) <= reachSquared
+                    || distanceSquared(x, y, x0, y1, x0, y0) <= reachSquared;
+        }
+        if (mType == TYPE_ELLIPSE && mPointCount >= 2) {
+            float centerX = (mPoints[0] + mPoints[2]) / 2;
+            float centerY = (mPoints[1] + mPoints[3]) / 2;
+            float radiusX = Math.abs(mPoints[2] - mPoints[0]) / 2;
+            float radiusY = Math.abs(mPoints[3] - mPoints[1]) / 2;
+            float lastX = centerX + radiusX;
+            float lastY = centerY;
+            for (int i = 1; i <= ELLIPSE_SEGMENTS; i++) {
+                double angle = 2 * Math.PI * i / ELLIPSE_SEGMENTS;
+                float nextX = centerX + radiusX * (float) Math.cos(angle);
+                float nextY = centerY + radiusY * (float) Math.sin(angle);
+                if (distanceSquared(x, y, lastX, lastY, nextX, nextY) <= reachSquared) {
+                    return true;
+                }
+                lastX = nextX;
+                lastY = nextY;
+            }
+            return false;
+        }
+        if (mPointCount == 1) {
+            return distanceSquared(x, y, mPoints[0], mPoints[1], mPoints[0], mPoints[1])
+                    <= reachSquared;
+        }
+        for (int i = 1; i < mPointCount; i++) {
+            if (distanceSquared(x, y, mPoints[i * 2 - 2], mPoints[i * 2 - 1],
+                    mPoints[i * 2], mPoints[i * 2 + 1]) <= reachSquared) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes the strokes marked as erased from a list in a single pass, keeping the others in
+     * order.
+     *
+     * @param count The number of strokes at the start of the list to count removals in, for
+     *              example the strokes already saved
+     * @return How many of the removed strokes were among the first count strokes
+     */
+    public static int removeErased(List<Stroke> strokes, int count) {
+        int removedBefore = 0;
+        int kept = 0;
+        int size = strokes.size();
+        for (int i = 0; i < size; i++) {
+            Stroke stroke = strokes.get(i);
+            if (stroke.isErased()) {
+                if (i < count) {
+                    removedBefore++;
+                }
+            } else {
+                if (kept != i) {
+                    strokes.set(kept, stroke);
+                }
+                kept++;
+            }
+        }
+        strokes.subList(kept, size).clear();
+        return removedBefore;
+    }
+
+    /**
+     * Returns the squared distance from a point to the line segment between two others.
+     */
+    private static float distanceSquared(float x, float y, float x0, float y0, float x1, float y1) {
+        float dx = x1 - x0;
+        float dy = y1 - y0;
+        float lengthSquared = dx * dx + dy * dy;
+        float t = lengthSquared > 0 ? ((x - x0) * dx + (y - y0) * dy) / lengthSquared : 0;
+        t = Math.min(Math.max(t, 0), 1);
+        float ex = x0 + t * dx - x;
+        float ey = y0 + t * dy - y;
+        return ex * ex + ey * ey;
+    }
+
+    private void includePoint(float x, float y) {
+        mLeft = Math.min(mLeft, x);
+        mTop = Math.min(mTop, y);
+        mRight = Math.max(mRight, x);
+        mBottom = Math.max(mBottom, y);
+    }
+}
@@ -0,0 +1,266 @@
+package com.mbelkhode.drawingfun;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A uniform grid over the bounds of the strokes of a drawing, to find the strokes in an area
+ * without looking at all of them. Every stroke is listed in each CELL_SIZE square its bounds
+ * overlap; strokes partly outside the drawing are listed in the edge cells.
+ *
+ * Strokes are numbered in the order they are added, and query returns them in that order, which
+ * is the order they have to be drawn in. Queries do not allocate once the internal buffers and
+ * the caller's result list have grown to fit. Removed strokes leave a gap in the numbering that is
+ * dropped when the index is rebuilt, which happens on its own once most of it is gaps.
+ *
+ * Must only be used on one thread.
+ */
+public class StrokeIndex {
+
+    static final int CELL_SIZE = 64;
+    private static final int INITIAL_CELL_CAPACITY = 8;
+    private static final int MIN_REMOVED_TO_COMPACT = 64;
+    private static final int INSERTION_SORT_SIZE = 32;
+
+    private final int mColumns;
+    private final int mRows;
+    // The stroke numbers listed in every cell, mCellCounts[cell] of them
+    private final int[][] mCells;
+    private final int[] mCellCounts;
+    // The strokes by number, null where one was removed
+    private Stroke[] mStrokes = new Stroke[64];
+    // The query that last saw each stroke, so that one listed in several cells is found once
+    private int[] mStamps = new int[64];
+    private int mStamp;
+    private int mStrokeCount;
+    private int mRemovedCount;
+    private int[] mHits = new int[64];
+
+    /**
+     * Creates an empty index for a drawing of the given size.
+     */
+    public StrokeIndex(int width, int height) {
+        mColumns = Math.max(1, (width + CELL_SIZE - 1) / CELL_SIZE);
+        mRows = Math.max(1, (height + CELL_SIZE - 1) / CELL_SIZE);
+        mCells = new int[mColumns * mRows][];
+        mCellCounts = new int[mColumns * mRows];
+    }
+
+    /**
+     * Returns the number of strokes in the index.
+     */
+    public int size() {
+        return mStrokeCount - mRemovedCount;
+    }
+
+    /**
+     * Adds a stroke on top of the ones already added. The stroke must not change afterwards.
+     */
+    public void add(Stroke stroke) {
+        if (mStrokeCount == mStrokes.length) {
+            mStrokes = Arrays.copyOf(mStrokes, mStrokeCount * 2);
+            mStamps = Arrays.copyOf(mStamps, mStrokeCount * 2);
+        }
+        int number = mStrokeCount++;
+        mStrokes[number] = stroke;
+
+        int firstColumn = column(stroke.getLeft());
+        int lastColumn = column(stroke.getRight());
+        int lastRow = row(stroke.getBottom());
+        for (int row = row(stroke.getTop()); row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                addToCell(row * mColumns + column, number);
+            }
+        }
+    }
+
+    /**
+     * Removes a stroke.
+     *
+     * @return false if the stroke was not in the index
+     */
+    public boolean remove(Stroke stroke) {
+        int firstColumn = column(stroke.getLeft());
+        int lastColumn = column(stroke.getRight());
+        int firstRow = row(stroke.getTop());
+        int lastRow = row(stroke.getBottom());
+        int number = findInCell(firstRow * mColumns + firstColumn, stroke);
+        if (number < 0) {
+            return false;
+        }
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                removeFromCell(row * mColumns + column, number);
+            }
+        }
+        mStrokes[number] = null;
+        mRemovedCount++;
+        if (mRemovedCount >= MIN_REMOVED_TO_COMPACT && mRemovedCount * 2 > mStrokeCount) {
+            compact();
+        }
+        return true;
+    }
+
+    /**
+     * Removes all the strokes.
+     */
+    public void clear() {
+        Arrays.fill(mStrokes, 0, mStrokeCount, null);
+        Arrays.fill(mCellCounts, 0);
+        mStrokeCount = 0;
+        mRemovedCount = 0;
+    }
+
+    /**
+     * Adds the strokes whose bounds overlap the given area to result, in the order they were
+     * added to the index. The result is not cleared first.
+     */
+    public void query(float left, float top, float right, float bottom, List<Stroke> result) {
+        if (++mStamp == 0) {
+            // The stamps wrapped around, forget the old ones so that none is taken as current
+            Arrays.fill(mStamps, 0);
+            mStamp = 1;
+        }
+        int hitCount = 0;
+        int firstColumn = column(left);
+        int lastColumn = column(right);
+        int lastRow = row(bottom);
+        for (int row = row(top); row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int cell = row * mColumns + column;
+                int[] numbers = mCells[cell];
+                for (int i = 0; i < mCellCounts[cell]; i++) {
+                    int number = numbers[i];
+                    if (mStamps[number] == mStamp) {
+                        continue;
+                    }
+                    mStamps[number] = mStamp;
+                    Stroke stroke = mStrokes[number];
+                    if (stroke.getLeft() <= right && stroke.getRight() >= left
+                            && stroke.getTop() <= bottom && stroke.getBottom() >= top) {
+                        if (hitCount == mHits.length) {
+                            mHits = Arrays.copyOf(mHits, hitCount * 2);
+                        }
+                        mHits[hitCount++] = number;
+                    }
+                }
+            }
+        }
+        sort(mHits, hitCount);
+        for (int i = 0; i < hitCount; i++) {
+            result.add(mStrokes[mHits[i]]);
+        }
+    }
+
+    /**
+     * Sorts the first count numbers in place. Arrays.sort may allocate when the numbers are made
+     * of sorted runs, which is exactly what the cells give, so queries sort on their own.
+     */
+    static void sort(int[] numbers, int count) {
+        if (count <= INSERTION_SORT_SIZE) {
+            for (int i = 1; i < count; i++) {
+                int number = numbers[i];
+                int j = i - 1;
+                while (j >= 0 && numbers[j] > number) {
+                    numbers[j + 1] = numbers[j];
+                    j--;
+                }
+                numbers[j + 1] = number;
+            }
+            return;
+        }
+        // Heapsort
+        for (int i = count / 2 - 1; i >= 0; i--) {
+            siftDown(numbers, i, count);
+        }
+        for (int end = count - 1; end > 0; end--) {
+            int largest = numbers[0];
+            numbers[0] = numbers[end];
+            numbers[end] = largest;
+            siftDown(numbers, 0, end);
+        }
+    }
+
+    private static void siftDown(int[] numbers, int root, int count) {
+        int number = numbers[root];
+        int child = root * 2 + 1;
+        while (child < count) {
+            if (child + 1 < count && numbers[child + 1] > numbers[child]) {
+                child++;
+            }
+            if (numbers[child] <= number) {
+                break;
+            }
+            numbers[root] = numbers[child];
+            root = child;
+            child = root * 2 + 1;
+        }
+        numbers[root] = number;
+    }
+
+    private int column(float x) {
+        return Math.min(Math.max((int) Math.floor(x / CELL_SIZE), 0), mColumns - 1);
+    }
+
+    private int row(float y) {
+        return Math.min(Math.max((int) Math.floor(y / CELL_SIZE), 0), mRows - 1);
+    }
+
+    private void addToCell(int cell, int number) {
+        int[] numbers = mCells[cell];
+        int count = mCellCounts[cell];
+        if (numbers == null) {
+            numbers = new int[INITIAL_CELL_CAPACITY];
+            mCells[cell] = numbers;
+        } else if (count == numbers.length) {
+            numbers = Arrays.copyOf(numbers, count * 2);
+            mCells[cell] = numbers;
+        }
+        numbers[count] = number;
+        mCellCounts[cell] = count + 1;
+    }
+
+    private int findInCell(int cell, Stroke stroke) {
+        int[] numbers = mCells[cell];
+        for (int i = 0; i < mCellCounts[cell]; i++) {
+            if (mStrokes[numbers[i]] == stroke) {
+                return numbers[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Removes a number from a cell by moving the last one into its place. The order within a
+     * cell does not matter as query sorts what it finds.
+     */
+    private void removeFromCell(int cell, int number) {
+        int[] numbers = mCells[cell];
+        int count = mCellCounts[cell];
+        for (int i = 0; i < count; i++) {
+            if (numbers[i] == number) {
+                numbers[i] = numbers[count - 1];
+                mCellCounts[cell] = count - 1;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Numbers the remaining strokes again without gaps and lists them again.
+     */
+    private void compact() {
+        Stroke[] strokes = mStrokes;
+        int count = mStrokeCount;
+        mStrokes = new Stroke[Math.max(64, size() * 2)];
+        mStamps = new int[mStrokes.length];
+        Arrays.fill(mCellCounts, 0);
+        mStrokeCount = 0;
+        mRemovedCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (strokes[i] != null) {
+                add(strokes[i]);
+            }
+        }
+    }
+}
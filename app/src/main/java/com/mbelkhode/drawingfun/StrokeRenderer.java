@@ -0,0 +1,89 @@
+package com.mbelkhode.drawingfun;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+
+/**
+ * Draws Strokes onto a canvas. Freehand strokes are rebuilt into the same quadratic path the view
+ * builds while the finger moves, and shapes are drawn from their two corner points, so that
+ * strokes look the same when they are drawn again at any scale.
+ *
+ * Keeps its own path, paint and rectangle so that drawing does not allocate. An instance must
+ * only be used by one thread at a time.
+ */
+public class StrokeRenderer {
+
+    private final Path mPath = new Path();
+    private final Paint mPaint = new Paint();
+    private final RectF mRect = new RectF();
+
+    public StrokeRenderer() {
+        mPaint.setAntiAlias(true);
+        mPaint.setDither(true);
+        mPaint.setStyle(Paint.Style.STROKE);
+        mPaint.setStrokeJoin(Paint.Join.ROUND);
+        mPaint.setStrokeCap(Paint.Cap.ROUND);
+    }
+
+    /**
+     * Draws a stroke with its own color and width.
+     */
+    public void draw(Canvas canvas, Stroke stroke) {
+        mPaint.setColor(stroke.getColor());
+        mPaint.setStrokeWidth(stroke.getWidth());
+        if (stroke.getType() == Stroke.TYPE_FREEHAND) {
+            buildPath(stroke, mPath);
+            canvas.drawPath(mPath, mPaint);
+        } else if (stroke.getPointCount() >= 2) {
+            drawShape(canvas, stroke.getType(), stroke.getX(0), stroke.getY(0),
+                    stroke.getX(1), stroke.getY(1), mPaint);
+        }
+    }
+
+    /**
+     * Draws a shape between two corner points with the given paint.
+     *
+     * @param type One of the Stroke shape types
+     */
+    public void drawShape(Canvas canvas, byte type, float x0, float y0, float x1, float y1,
+                          Paint paint) {
+        switch (type) {
+            case Stroke.TYPE_LINE:
+                canvas.drawLine(x0, y0, x1, y1, paint);
+                break;
+            case Stroke.TYPE_RECTANGLE:
+                mRect.set(Math.min(x0, x1), Math.min(y0, y1), Math.max(x0, x1), Math.max(y0, y1));
+                canvas.drawRect(mRect, paint);
+                break;
+            case Stroke.TYPE_ELLIPSE:
+                mRect.set(Math.min(x0, x1), Math.min(y0, y1), Math.max(x0, x1), Math.max(y0, y1));
+                canvas.drawOval(mRect, paint);
+                break;
+        }
+    }
+
+    /**
+     * Rebuilds the path of a freehand stroke the same way the view builds it from touch events:
+     * a quadratic curve to the midpoint of every two points and a line to the last point.
+     */
+    public static void buildPath(Stroke stroke, Path path) {
+        path.reset();
+        int count = stroke.getPointCount();
+        if (count == 0) {
+            return;
+        }
+        float x = stroke.getX(0);
+        float y = stroke.getY(0);
+        path.moveTo(x, y);
+        for (int i = 1; i < count; i++) {
+            float nextX = stroke.getX(i);
+            float nextY = stroke.getY(i);
+            path.quadTo(x, y, (nextX + x) / 2, (nextY + y) / 2);
+            x = nextX;
+            y = nextY;
+        }
+        path.lineTo(x, y);
+    }
+}
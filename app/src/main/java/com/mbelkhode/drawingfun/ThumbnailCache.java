@@ -0,0 +1,226 @@
+package com.mbelkhode.drawingfun;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads the thumbnails of saved projects for the project browser. Thumbnails are decoded on a
+ * small pool of background threads at a reduced sample size and kept in two levels of cache
+ *
+ *    1. Memory - An LRU cache bounded to an eighth of the heap.
+ *    2. Disk - The decoded thumbnails as jpegs in the app cache directory, so that later visits
+ *           to the browser do not have to open the project files. Bounded to MAX_DISK_CACHE_SIZE.
+ *
+ * The cache key includes the last modified time of the project, so saving a project again
+ * makes its old thumbnail unused.
+ */
+public class ThumbnailCache {
+
+    private static final String LOG_TAG = ThumbnailCache.class.getSimpleName();
+    private static final String DISK_CACHE_DIRECTORY = "thumbnails";
+    private static final long MAX_DISK_CACHE_SIZE = 20 * 1024 * 1024;
+    private static final int THUMBNAIL_QUALITY = 85;
+    private static final int THREAD_COUNT = 2;
+
+    private static ThumbnailCache sInstance;
+
+    private final LruCache<String, Bitmap> mMemoryCache;
+    private final File mDiskCacheDirectory;
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(THREAD_COUNT);
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * The callback to receive a loaded thumbnail. Called on the UI thread.
+     */
+    public interface OnThumbnailLoadedListener {
+        void onThumbnailLoaded(File project, Bitmap thumbnail);
+    }
+
+    /**
+     * Returns the cache shared by the whole app, creating it the first time.
+     */
+    public static synchronized ThumbnailCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ThumbnailCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private ThumbnailCache(Context context) {
+        int maxKilobytes = (int) (Runtime.getRuntime().maxMemory() / 1024 / 8);
+        mMemoryCache = new LruCache<String, Bitmap>(maxKilobytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount() / 1024;
+            }
+        };
+        mDiskCacheDirectory = new File(context.getCacheDir(), DISK_CACHE_DIRECTORY);
+    }
+
+    /**
+     * Returns the thumbnail if it is in the memory cache, null otherwise. Does not touch the disk.
+     */
+    public Bitmap getCached(File project, long lastModified, int size) {
+        return mMemoryCache.get(getKey(project, lastModified, size));
+    }
+
+    /**
+     * Loads the thumbnail of a project in the background.
+     *
+     * @param project The project file
+     * @param lastModified The last modified time of the project file, as listed by the caller
+     * @param size The smallest size in pixels the thumbnail may have on either side
+     * @param listener Called on the UI thread with the thumbnail, or with null if the project has
+     *                 no preview
+     * @return The pending load, which may be cancelled if the thumbnail is no longer needed
+     */
+    public Future<?> load(final File project, final long lastModified, final int size,
+                          final OnThumbnailLoadedListener listener) {
+        return mExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap thumbnail = loadThumbnail(project, lastModified, size);
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onThumbnailLoaded(project, thumbnail);
+                    }
+                });
+            }
+        });
+    }
+
+    private Bitmap loadThumbnail(File project, long lastModified, int size) {
+        String key = getKey(project, lastModified, size);
+        Bitmap thumbnail = mMemoryCache.get(key);
+        if (thumbnail != null) {
+            return thumbnail;
+        }
+
+        File diskFile = new File(mDiskCacheDirectory, key);
+        if (diskFile.isFile()) {
+            thumbnail = BitmapFactory.decodeFile(diskFile.getPath());
+        }
+        if (thumbnail == null) {
+            thumbnail = decodePreview(project, size);
+            if (thumbnail != null) {
+                writeToDisk(diskFile, thumbnail);
+            }
+        }
+        if (thumbnail != null) {
+            mMemoryCache.put(key, thumbnail);
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Decodes the preview saved in the project with the largest sample size that keeps it at
+     * least the requested size.
+     */
+    private static Bitmap decodePreview(File project, int size) {
+        byte[] preview;
+        try {
+            ProjectFile projectFile = ProjectFile.openReadOnly(project);
+            try {
+                preview = projectFile.readPreview();
+            } finally {
+                projectFile.close();
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "decodePreview: could not read " + project, e);
+            return null;
+        }
+        if (preview == null) {
+            return null;
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(preview, 0, preview.length, options);
+        options.inSampleSize = computeSampleSize(options.outWidth, options.outHeight, size);
+        options.inJustDecodeBounds = false;
+        return BitmapFactory.decodeByteArray(preview, 0, preview.length, options);
+    }
+
+    /**
+     * Returns the largest power of 2 sample size that keeps both sides at least the given size.
+     */
+    static int computeSampleSize(int width, int height, int size) {
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= size && height / (sampleSize * 2) >= size) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private void writeToDisk(File diskFile, Bitmap thumbnail) {
+        synchronized (mDiskCacheDirectory) {
+            if (!mDiskCacheDirectory.isDirectory() && !mDiskCacheDirectory.mkdirs()) {
+                Log.e(LOG_TAG, "writeToDisk: could not create " + mDiskCacheDirectory);
+                return;
+            }
+            try {
+                OutputStream out = new FileOutputStream(diskFile);
+                try {
+                    thumbnail.compress(Bitmap.CompressFormat.JPEG, THUMBNAIL_QUALITY, out);
+                } finally {
+                    out.close();
+                }
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "writeToDisk: could not write " + diskFile, e);
+                return;
+            }
+            trimDiskCache();
+        }
+    }
+
+    /**
+     * Deletes the least recently written thumbnails until the disk cache fits its bound.
+     */
+    private void trimDiskCache() {
+        File[] files = mDiskCacheDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long totalSize = 0;
+        for (File file : files) {
+            totalSize += file.length();
+        }
+        if (totalSize <= MAX_DISK_CACHE_SIZE) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                return Long.compare(lhs.lastModified(), rhs.lastModified());
+            }
+        });
+        for (int i = 0; i < files.length && totalSize > MAX_DISK_CACHE_SIZE; i++) {
+            totalSize -= files[i].length();
+            if (!files[i].delete()) {
+                Log.e(LOG_TAG, "trimDiskCache: could not delete " + files[i]);
+            }
+        }
+    }
+
+    private static String getKey(File project, long lastModified, int size) {
+        return project.getName() + "_" + lastModified + "_" + size + ".jpg";
+    }
+}
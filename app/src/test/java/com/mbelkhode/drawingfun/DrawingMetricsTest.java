@@ -0,0 +1,57 @@
+package com.mbelkhode.drawingfun;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for how DrawingMetrics pairs touch events with the frames that draw them.
+ */
+public class DrawingMetricsTest {
+
+    @Test
+    public void inputThenDraw_recordsOneLatency() throws Exception {
+        DrawingMetrics metrics = new DrawingMetrics();
+        metrics.recordInput(1000);
+        metrics.recordDraw(5000, 6000);
+
+        assertEquals(1, metrics.getInputToFrame().getTotalCount());
+        assertEquals(5000, metrics.getInputToFrame().getMaxValue());
+        assertEquals(1, metrics.getDraw().getTotalCount());
+
+        // The input was closed by that frame, so the next one has no latency to record
+        metrics.recordDraw(7000, 8000);
+        assertEquals(1, metrics.getInputToFrame().getTotalCount());
+        assertEquals(2, metrics.getDraw().getTotalCount());
+    }
+
+    @Test
+    public void drawWithoutInput_recordsNoLatency() throws Exception {
+        DrawingMetrics metrics = new DrawingMetrics();
+        metrics.recordDraw(5000, 6000);
+
+        assertEquals(0, metrics.getInputToFrame().getTotalCount());
+        assertEquals(1, metrics.getDraw().getTotalCount());
+    }
+
+    @Test
+    public void inputsBeforeOneDraw_keepTheOldest() throws Exception {
+        DrawingMetrics metrics = new DrawingMetrics();
+        metrics.recordInput(1000);
+        metrics.recordInput(3000);
+        metrics.recordDraw(5000, 6000);
+
+        assertEquals(1, metrics.getInputToFrame().getTotalCount());
+        assertEquals(5000, metrics.getInputToFrame().getMaxValue());
+    }
+
+    @Test
+    public void reset_dropsThePendingInput() throws Exception {
+        DrawingMetrics metrics = new DrawingMetrics();
+        metrics.recordInput(1000);
+        metrics.reset();
+        metrics.recordDraw(5000, 6000);
+
+        assertEquals(0, metrics.getInputToFrame().getTotalCount());
+    }
+}
@@ -0,0 +1,73 @@
+package com.mbelkhode.drawingfun;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the LatencyHistogram percentile math.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void emptyHistogram_reportsZero() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getTotalCount());
+        assertEquals(0, histogram.getValueAtPercentile(99.0));
+        assertEquals(0, histogram.getMinValue());
+        assertEquals(0, histogram.getMaxValue());
+    }
+
+    @Test
+    public void smallValues_areExact() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.recordValue(i);
+        }
+        assertEquals(100, histogram.getTotalCount());
+        assertEquals(50, histogram.getValueAtPercentile(50.0));
+        assertEquals(99, histogram.getValueAtPercentile(99.0));
+        assertEquals(100, histogram.getValueAtPercentile(100.0));
+        assertEquals(1, histogram.getMinValue());
+        assertEquals(50.5, histogram.getMean(), 0.0001);
+    }
+
+    @Test
+    public void largeValues_areWithinPrecision() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1000; value <= 100000000L; value *= 3) {
+            histogram.reset();
+            histogram.recordValue(value);
+            histogram.recordValue(value * 2);
+            long reported = histogram.getValueAtPercentile(50.0);
+            assertTrue("value " + value + " reported as " + reported,
+                    Math.abs(reported - value) <= value / 64);
+        }
+    }
+
+    @Test
+    public void percentiles_followDistribution() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        // 90 fast frames of 4ms and 10 slow frames of 40ms
+        for (int i = 0; i < 90; i++) {
+            histogram.recordValue(4000000L);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.recordValue(40000000L);
+        }
+        assertEquals(4000000L, histogram.getValueAtPercentile(50.0), 4000000L / 64);
+        assertEquals(4000000L, histogram.getValueAtPercentile(90.0), 4000000L / 64);
+        assertEquals(40000000L, histogram.getValueAtPercentile(99.0), 40000000L / 64);
+        assertEquals(40000000L, histogram.getMaxValue());
+    }
+
+    @Test
+    public void outOfRangeValues_areClamped() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordValue(-5);
+        histogram.recordValue(Long.MAX_VALUE);
+        assertEquals(0, histogram.getMinValue());
+        assertEquals(LatencyHistogram.MAX_TRACKABLE_VALUE, histogram.getMaxValue());
+        assertEquals(LatencyHistogram.MAX_TRACKABLE_VALUE, histogram.getValueAtPercentile(100.0));
+    }
+}
@@ -0,0 +1,107 @@
+package com.mbelkhode.drawingfun;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmarks streaming a drawing to a png one band at a time, the way HighResExporter does, at
+ * 1x, 2x and 4x a full screen drawing. Prints the time, the size of the png and how much the
+ * peak heap use grew while encoding. The test fails if the peak grows with the image instead of
+ * staying near the size of one band.
+ */
+public class PngWriterBenchmarkTest {
+
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+    private static final int[] SCALES = {1, 2, 4};
+
+    @Test
+    public void benchmark_exportSizes() throws Exception {
+        // Warm up so that the first size is not measured with an interpreted encoder
+        export(WIDTH, HEIGHT, new CountingOutputStream());
+
+        for (int scale : SCALES) {
+            int width = WIDTH * scale;
+            int height = HEIGHT * scale;
+            System.gc();
+            long baseline = resetPeakHeap();
+            CountingOutputStream out = new CountingOutputStream();
+            long start = System.nanoTime();
+            export(width, height, out);
+            long nanos = System.nanoTime() - start;
+            long peakGrowth = getPeakHeap() - baseline;
+            long imageBytes = (long) width * height * 4;
+
+            System.out.println(String.format("%dx png %dx%d: %.1f ms, %d KB png, "
+                            + "peak heap +%d KB (full bitmap would be %d KB)",
+                    scale, width, height, nanos / 1e6, out.count / 1024, peakGrowth / 1024,
+                    imageBytes / 1024));
+            if (scale > 1) {
+                assertTrue("Peak memory grows with the image", peakGrowth < imageBytes / 4);
+            }
+        }
+    }
+
+    /**
+     * Writes a white image crossed by colored lines, one band at a time from one band buffer.
+     */
+    private static void export(int width, int height, OutputStream out) throws IOException {
+        int bandRows = HighResExporter.getBandRows(width, height);
+        int[] band = new int[width * bandRows];
+        PngWriter writer = new PngWriter(out, width, height);
+        for (int top = 0; top < height; top += bandRows) {
+            int rows = Math.min(bandRows, height - top);
+            for (int y = 0; y < rows; y++) {
+                int row = y * width;
+                for (int x = 0; x < width; x++) {
+                    int line = (x + top + y) % 97;
+                    band[row + x] = line < 6 ? 0xFF000000 | (x * 31 + top * 17) : 0xFFFFFFFF;
+                }
+            }
+            writer.writeRows(band, 0, width, rows);
+        }
+        writer.close();
+    }
+
+    private static long resetPeakHeap() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                used += pool.getUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+    private static long getPeakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) {
+            count += length;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.mbelkhode.drawingfun;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the streaming PngWriter. The written images are decoded with ImageIO.
+ */
+public class PngWriterTest {
+
+    @Test
+    public void rowsWrittenInBands_decodeToSamePixels() throws Exception {
+        int width = 37;
+        int height = 23;
+        int[] pixels = new int[width * height];
+        Random random = new Random(7);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PngWriter writer = new PngWriter(out, width, height);
+        writer.writeRows(pixels, 0, width, 10);
+        writer.writeRows(pixels, 10 * width, width, 1);
+        writer.writeRows(pixels, 11 * width, width, 12);
+        writer.close();
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(width, image.getWidth());
+        assertEquals(height, image.getHeight());
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                assertEquals((pixels[y * width + x] & 0xFFFFFF) | 0xFF000000, image.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void largeImage_isSplitIntoSeveralChunks() throws Exception {
+        int width = 300;
+        int height = 300;
+        int[] pixels = new int[width * height];
+        Random random = new Random(8);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PngWriter writer = new PngWriter(out, width, height);
+        writer.writeRows(pixels, 0, width, height);
+        writer.close();
+
+        byte[] png = out.toByteArray();
+        assertTrue(png.length > 3 * 64 * 1024);
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+        assertEquals(pixels[299 * width + 299] | 0xFF000000, image.getRGB(299, 299));
+    }
+
+    @Test
+    public void rowsOfALargerImage_canBeWritten() throws Exception {
+        int stride = 8;
+        int[] pixels = new int[stride * 2];
+        pixels[1] = 0xFF123456;
+        pixels[stride + 1] = 0xFF654321;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PngWriter writer = new PngWriter(out, 2, 2);
+        writer.writeRows(pixels, 0, stride, 2);
+        writer.close();
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(0xFF123456, image.getRGB(1, 0));
+        assertEquals(0xFF654321, image.getRGB(1, 1));
+    }
+
+    @Test(expected = IOException.class)
+    public void tooManyRows_fail() throws Exception {
+        PngWriter writer = new PngWriter(new ByteArrayOutputStream(), 4, 2);
+        writer.writeRows(new int[12], 0, 4, 3);
+    }
+
+    @Test(expected = IOException.class)
+    public void missingRows_failOnClose() throws Exception {
+        PngWriter writer = new PngWriter(new ByteArrayOutputStream(), 4, 2);
+        writer.writeRows(new int[4], 0, 4, 1);
+        writer.close();
+    }
+}
@@ -0,0 +1,371 @@
+package com.mbelkhode.drawingfun;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the ProjectFile format, including incremental saves and compaction.
+ */
+public class ProjectFileTest {
+
+    private static final int TILE_PIXELS = ProjectFile.TILE_SIZE * ProjectFile.TILE_SIZE;
+
+    @Test
+    public void tilesAndStrokes_roundTrip() throws Exception {
+        File file = newFile();
+        int[] tile = filledTile(0xFF00FF00);
+        List<Stroke> strokes = new ArrayList<>();
+        strokes.add(stroke(0xFFFF0000, 10, 20, 30, 40, 50, 60));
+        strokes.add(stroke(0xFF0000FF, 5, 6, 7, 8));
+
+        ProjectFile project = ProjectFile.create(file, 500, 300);
+        project.writeTile(ProjectFile.LAYER_CANVAS, 3, tile);
+        project.appendStrokes(strokes, 0);
+        project.commit();
+        project.close();
+
+        project = ProjectFile.open(file);
+        assertEquals(500, project.getWidth());
+        assertEquals(300, project.getHeight());
+        assertEquals(2, project.getTileColumns());
+        assertEquals(2, project.getTileRows());
+        assertTrue(project.hasTile(ProjectFile.LAYER_CANVAS, 3));
+        assertFalse(project.hasTile(ProjectFile.LAYER_CANVAS, 0));
+
+        int[] read = new int[TILE_PIXELS];
+        assertTrue(project.readTile(ProjectFile.LAYER_CANVAS, 3, read));
+        assertArrayEquals(tile, read);
+        assertFalse(project.readTile(ProjectFile.LAYER_CANVAS, 0, read));
+
+        List<Stroke> readStrokes = project.readStrokes();
+        assertEquals(2, readStrokes.size());
+        assertStrokeEquals(strokes.get(0), readStrokes.get(0));
+        assertStrokeEquals(strokes.get(1), readStrokes.get(1));
+        project.close();
+    }
+
+    @Test
+    public void incrementalSave_onlyAppendsChanges() throws Exception {
+        File file = newFile();
+        List<Stroke> strokes = new ArrayList<>();
+        strokes.add(stroke(0xFF000000, 1, 1, 2, 2));
+
+        ProjectFile project = ProjectFile.create(file, 1024, 1024);
+        Random random = new Random(1);
+        for (int tile = 0; tile < 16; tile++) {
+            project.writeTile(ProjectFile.LAYER_CANVAS, tile, randomTile(random));
+        }
+        project.appendStrokes(strokes, 0);
+        project.commit();
+        project.close();
+        long fullSize = file.length();
+
+        // Change one tile and add one stroke
+        strokes.add(stroke(0xFF000000, 3, 3, 4, 4));
+        int[] changed = filledTile(0xFF123456);
+        project = ProjectFile.open(file);
+        project.writeTile(ProjectFile.LAYER_CANVAS, 5, changed);
+        project.appendStrokes(strokes, 1);
+        project.commit();
+        project.close();
+        assertTrue("incremental save rewrote too much", file.length() - fullSize < fullSize / 8);
+
+        project = ProjectFile.open(file);
+        int[] read = new int[TILE_PIXELS];
+        project.readTile(ProjectFile.LAYER_CANVAS, 5, read);
+        assertArrayEquals(changed, read);
+        assertEquals(2, project.readStrokes().size());
+        assertEquals(2, project.getStrokeBatchCount());
+        project.close();
+    }
+
+    @Test
+    public void clearStrokes_dropsSavedStrokes() throws Exception {
+        File file = newFile();
+        List<Stroke> strokes = new ArrayList<>();
+        strokes.add(stroke(0xFF000000, 1, 1, 2, 2));
+        ProjectFile project = ProjectFile.create(file, 100, 100);
+        project.appendStrokes(strokes, 0);
+        project.commit();
+        project.close();
+
+        project = ProjectFile.open(file);
+        project.clearStrokes();
+        project.commit();
+        project.close();
+
+        project = ProjectFile.open(file);
+        assertEquals(0, project.readStrokes().size());
+        project.close();
+    }
+
+    @Test
+    public void repeatedSaves_compactTheFile() throws Exception {
+        File file = newFile();
+        Random random = new Random(2);
+        ProjectFile project = ProjectFile.create(file, 256, 256);
+        project.commit();
+        project.close();
+
+        int[] last = null;
+        for (int i = 0; i < 30; i++) {
+            last = randomTile(random);
+            project = ProjectFile.open(file);
+            project.writeTile(ProjectFile.LAYER_CANVAS, 0, last);
+            project.commit();
+            project.close();
+        }
+        // Each random tile is about 256 KB, so without compaction the file would be over 7 MB
+        assertTrue("file was not compacted: " + file.length(), file.length() < 3 * 1024 * 1024);
+
+        project = ProjectFile.open(file);
+        int[] read = new int[TILE_PIXELS];
+        project.readTile(ProjectFile.LAYER_CANVAS, 0, read);
+        assertArrayEquals(last, read);
+        project.close();
+    }
+
+    @Test
+    public void preview_roundTripsAndIsReplaced() throws Exception {
+        File file = newFile();
+        ProjectFile project = ProjectFile.create(file, 100, 100);
+        assertNull(project.readPreview());
+        project.writePreview(new byte[] {1, 2, 3});
+        project.commit();
+        project.close();
+
+        project = ProjectFile.open(file);
+        assertArrayEquals(new byte[] {1, 2, 3}, project.readPreview());
+        project.writePreview(new byte[] {4, 5});
+        project.commit();
+        project.close();
+
+        project = ProjectFile.open(file);
+        assertArrayEquals(new byte[] {4, 5}, project.readPreview());
+        project.close();
+    }
+
+    @Test
+    public void saveCutShort_opensTheLastCompletedSave() throws Exception {
+        File file = newFile();
+        int[] saved = filledTile(0xFF112233);
+        List<Stroke> strokes = new ArrayList<>();
+        strokes.add(stroke(0xFF000000, 1, 1, 2, 2));
+        ProjectFile project = ProjectFile.create(file, 512, 512);
+        project.writeTile(ProjectFile.LAYER_CANVAS, 1, saved);
+        project.appendStrokes(strokes, 0);
+        project.commit();
+        project.close();
+        long committedLength = file.length();
+
+        // A second save that dies after appending its chunks, before the new index is written
+        Random random = new Random(3);
+        strokes.add(stroke(0xFF000000, 3, 3, 4, 4));
+        project = ProjectFile.open(file);
+        project.writeTile(ProjectFile.LAYER_CANVAS, 1, randomTile(random));
+        project.writeTile(ProjectFile.LAYER_CANVAS, 2, randomTile(random));
+        project.appendStrokes(strokes, 1);
+        project.close();
+        long appendedLength = file.length();
+        assertTrue(appendedLength > committedLength);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(committedLength + (appendedLength - committedLength) / 2);
+        raf.close();
+
+        project = ProjectFile.open(file);
+        int[] read = new int[TILE_PIXELS];
+        assertTrue(project.readTile(ProjectFile.LAYER_CANVAS, 1, read));
+        assertArrayEquals(saved, read);
+        assertFalse(project.hasTile(ProjectFile.LAYER_CANVAS, 2));
+        assertEquals(1, project.readStrokes().size());
+
+        // Saving again writes over what the failed save left behind
+        int[] changed = filledTile(0xFF445566);
+        project.writeTile(ProjectFile.LAYER_CANVAS, 2, changed);
+        project.commit();
+        project.close();
+
+        project = ProjectFile.open(file);
+        assertTrue(project.readTile(ProjectFile.LAYER_CANVAS, 2, read));
+        assertArrayEquals(changed, read);
+        assertTrue(project.readTile(ProjectFile.LAYER_CANVAS, 1, read));
+        assertArrayEquals(saved, read);
+        project.close();
+    }
+
+    @Test
+    public void createOverAProject_onlyReplacesItOnCommit() throws Exception {
+        File file = newFile();
+        int[] saved = filledTile(0xFF112233);
+        ProjectFile project = ProjectFile.create(file, 256, 256);
+        project.writeTile(ProjectFile.LAYER_CANVAS, 0, saved);
+        project.commit();
+        project.close();
+
+        // A rewrite that fails before its commit leaves the project as it was
+        project = ProjectFile.create(file, 512, 512);
+        project.writeTile(ProjectFile.LAYER_CANVAS, 0, filledTile(0xFF778899));
+        project.close();
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+        project = ProjectFile.open(file);
+        assertEquals(256, project.getWidth());
+        int[] read = new int[TILE_PIXELS];
+        assertTrue(project.readTile(ProjectFile.LAYER_CANVAS, 0, read));
+        assertArrayEquals(saved, read);
+        project.close();
+
+        int[] rewritten = filledTile(0xFF445566);
+        project = ProjectFile.create(file, 512, 512);
+        project.writeTile(ProjectFile.LAYER_CANVAS, 0, rewritten);
+        project.commit();
+        project.close();
+        project = ProjectFile.open(file);
+        assertEquals(512, project.getWidth());
+        assertTrue(project.readTile(ProjectFile.LAYER_CANVAS, 0, read));
+        assertArrayEquals(rewritten, read);
+        project.close();
+    }
+
+    @Test
+    public void indexCutShort_opensTheLastCompletedSave() throws Exception {
+        File file = newFile();
+        int[] saved = filledTile(0xFF112233);
+        ProjectFile project = ProjectFile.create(file, 256, 256);
+        project.writeTile(ProjectFile.LAYER_CANVAS, 0, saved);
+        project.commit();
+        project.close();
+        long committedLength = file.length();
+
+        project = ProjectFile.open(file);
+        project.writeTile(ProjectFile.LAYER_CANVAS, 0, filledTile(0xFF778899));
+        project.close();
+        // A partly written index after the new chunk, ending with the start of a footer
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(raf.length());
+        raf.writeInt(256);
+        raf.writeInt(256);
+        raf.writeInt(1);
+        raf.writeLong(committedLength);
+        raf.close();
+
+        project = ProjectFile.open(file);
+        int[] read = new int[TILE_PIXELS];
+        assertTrue(project.readTile(ProjectFile.LAYER_CANVAS, 0, read));
+        assertArrayEquals(saved, read);
+        project.close();
+    }
+
+    @Test
+    public void openReadOnly_readsButNeverWrites() throws Exception {
+        File file = newFile();
+        int[] saved = filledTile(0xFF112233);
+        ProjectFile project = ProjectFile.create(file, 256, 256);
+        project.writeTile(ProjectFile.LAYER_CANVAS, 0, saved);
+        project.commit();
+        project.close();
+        long length = file.length();
+        assertTrue(file.setReadOnly());
+
+        project = ProjectFile.openReadOnly(file);
+        int[] read = new int[TILE_PIXELS];
+        assertTrue(project.readTile(ProjectFile.LAYER_CANVAS, 0, read));
+        assertArrayEquals(saved, read);
+        try {
+            project.writeTile(ProjectFile.LAYER_CANVAS, 0, filledTile(0xFF445566));
+            fail("wrote to a project opened read only");
+        } catch (java.io.IOException expected) {
+        }
+        project.close();
+        assertEquals(length, file.length());
+    }
+
+    @Test(expected = java.io.IOException.class)
+    public void open_rejectsOtherFiles() throws Exception {
+        File file = newFile();
+        java.io.FileOutputStream out = new java.io.FileOutputStream(file);
+        out.write(new byte[64]);
+        out.close();
+        ProjectFile.open(file);
+    }
+
+    @Test
+    public void fullScreenSave_isFast() throws Exception {
+        File file = newFile();
+        int width = 1440;
+        int height = 2560;
+        int tileCount = ProjectFile.tileCount(width) * ProjectFile.tileCount(height);
+        List<int[]> tiles = new ArrayList<>();
+        for (int tile = 0; tile < tileCount; tile++) {
+            // A white canvas with a few strokes across it
+            int[] pixels = filledTile(0xFFFFFFFF);
+            Arrays.fill(pixels, tile * 100, tile * 100 + 5000, 0xFF0000FF);
+            tiles.add(pixels);
+        }
+
+        long start = System.nanoTime();
+        ProjectFile project = ProjectFile.create(file, width, height);
+        for (int tile = 0; tile < tileCount; tile++) {
+            project.writeTile(ProjectFile.LAYER_CANVAS, tile, tiles.get(tile));
+        }
+        project.commit();
+        project.close();
+        long saveNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        project = ProjectFile.open(file);
+        int[] read = new int[TILE_PIXELS];
+        for (int tile = 0; tile < tileCount; tile++) {
+            project.readTile(ProjectFile.LAYER_CANVAS, tile, read);
+        }
+        project.close();
+        long loadNanos = System.nanoTime() - start;
+
+        System.out.println("Project " + width + "x" + height + ": " + file.length() + " bytes, save "
+                + saveNanos / 1000000 + " ms, load " + loadNanos / 1000000 + " ms");
+        assertTrue(saveNanos < 1000000000L);
+        assertTrue(loadNanos < 1000000000L);
+    }
+
+    private static File newFile() throws Exception {
+        File file = File.createTempFile("project", ProjectFile.EXTENSION);
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static Stroke stroke(int color, float... points) {
+        return new Stroke(Stroke.TYPE_FREEHAND, color, 12, points.clone(), points.length / 2);
+    }
+
+    private static int[] filledTile(int color) {
+        int[] pixels = new int[TILE_PIXELS];
+        Arrays.fill(pixels, color);
+        return pixels;
+    }
+
+    private static int[] randomTile(Random random) {
+        int[] pixels = new int[TILE_PIXELS];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+        return pixels;
+    }
+
+    private static void assertStrokeEquals(Stroke expected, Stroke actual) {
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.getColor(), actual.getColor());
+        assertEquals(expected.getWidth(), actual.getWidth(), 0);
+        assertEquals(expected.getPointCount(), actual.getPointCount());
+        for (int i = 0; i < expected.getPointCount(); i++) {
+            assertEquals(expected.getX(i), actual.getX(i), 0);
+            assertEquals(expected.getY(i), actual.getY(i), 0);
+        }
+    }
+}
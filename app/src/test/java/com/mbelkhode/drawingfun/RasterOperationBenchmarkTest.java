@@ -0,0 +1,68 @@
+package com.mbelkhode.drawingfun;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmarks every RasterOperation on a full screen raster, with one thread and with the
+ * RasterOperationEngine using every core. The timings are printed; the test only fails if an
+ * operation is far too slow to be used at all.
+ */
+public class RasterOperationBenchmarkTest {
+
+    private static final int WIDTH = 1440;
+    private static final int HEIGHT = 2560;
+    private static final int WARMUP_RUNS = 2;
+    private static final int RUNS = 5;
+    private static final long MAX_NANOS = 5000000000L;
+
+    @Test
+    public void benchmark_allOperations() throws Exception {
+        Raster source = new Raster(WIDTH, HEIGHT);
+        Random random = new Random(4);
+        for (int i = 0; i < source.pixels.length; i++) {
+            source.pixels[i] = random.nextInt();
+        }
+        String[] names = {"rotate", "flipH", "flipV", "scale", "grayscale", "invert", "blur"};
+        RasterOperation[] operations = {
+                RasterOperation.ROTATE_90, RasterOperation.FLIP_HORIZONTAL,
+                RasterOperation.FLIP_VERTICAL, RasterOperation.scale(WIDTH / 2, HEIGHT / 2),
+                RasterOperation.GRAYSCALE, RasterOperation.INVERT, RasterOperation.blur(4)
+        };
+        int cores = Runtime.getRuntime().availableProcessors();
+        RasterOperationEngine single = new RasterOperationEngine(1);
+        RasterOperationEngine parallel = new RasterOperationEngine(cores);
+        try {
+            for (int i = 0; i < operations.length; i++) {
+                long singleNanos = time(single, operations[i], source);
+                long parallelNanos = time(parallel, operations[i], source);
+                System.out.println(String.format("%-9s %dx%d: 1 thread %.1f ms, %d threads %.1f ms",
+                        names[i], WIDTH, HEIGHT, singleNanos / 1e6, cores, parallelNanos / 1e6));
+                assertTrue(names[i] + " is too slow", parallelNanos < MAX_NANOS);
+            }
+        } finally {
+            single.shutdown();
+            parallel.shutdown();
+        }
+    }
+
+    /**
+     * Returns the best time of a few runs after warming up.
+     */
+    private static long time(RasterOperationEngine engine, RasterOperation operation,
+                             Raster source) throws Exception {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            engine.apply(operation, source);
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            engine.apply(operation, source);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,101 @@
+package com.mbelkhode.drawingfun;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the RasterOperations and the banding of the RasterOperationEngine.
+ */
+public class RasterOperationTest {
+
+    @Test
+    public void rotate_turnsClockwise() throws Exception {
+        // 1 2 3      4 1
+        // 4 5 6  ->  5 2
+        //            6 3
+        Raster source = new Raster(3, 2, new int[] {1, 2, 3, 4, 5, 6});
+        Raster output = apply(RasterOperation.ROTATE_90, source, 1);
+        assertEquals(2, output.width);
+        assertEquals(3, output.height);
+        assertArrayEquals(new int[] {4, 1, 5, 2, 6, 3}, output.pixels);
+    }
+
+    @Test
+    public void flips_mirrorThePixels() throws Exception {
+        Raster source = new Raster(3, 2, new int[] {1, 2, 3, 4, 5, 6});
+        assertArrayEquals(new int[] {3, 2, 1, 6, 5, 4},
+                apply(RasterOperation.FLIP_HORIZONTAL, source, 1).pixels);
+        assertArrayEquals(new int[] {4, 5, 6, 1, 2, 3},
+                apply(RasterOperation.FLIP_VERTICAL, source, 1).pixels);
+    }
+
+    @Test
+    public void colorFilters_keepAlpha() throws Exception {
+        Raster source = new Raster(2, 1, new int[] {0x80FF0000, 0xFFFFFFFF});
+        Raster gray = apply(RasterOperation.GRAYSCALE, source, 1);
+        assertEquals(0x804C4C4C, gray.pixels[0]);
+        assertEquals(0xFFFFFFFF, gray.pixels[1]);
+        Raster inverted = apply(RasterOperation.INVERT, source, 1);
+        assertEquals(0x8000FFFF, inverted.pixels[0]);
+        assertEquals(0xFF000000, inverted.pixels[1]);
+    }
+
+    @Test
+    public void scale_keepsFlatColorsAndSize() throws Exception {
+        Raster source = new Raster(40, 30);
+        java.util.Arrays.fill(source.pixels, 0xFF336699);
+        Raster half = apply(RasterOperation.scale(20, 15), source, 1);
+        assertEquals(20, half.width);
+        assertEquals(15, half.height);
+        for (int color : half.pixels) {
+            assertEquals(0xFF336699, color);
+        }
+        Raster twice = apply(RasterOperation.scale(80, 60), source, 1);
+        assertEquals(80 * 60, twice.width * twice.height);
+        assertEquals(0xFF336699, twice.pixels[twice.pixels.length / 2]);
+    }
+
+    @Test
+    public void blur_spreadsASinglePixel() throws Exception {
+        Raster source = new Raster(5, 5);
+        source.pixels[12] = 0xFFFFFFFF;
+        Raster output = apply(RasterOperation.blur(1), source, 1);
+        // The 3x3 box around the center gets a ninth of the value on every channel
+        assertEquals(0x1C1C1C1C, output.pixels[12]);
+        assertEquals(0x1C1C1C1C, output.pixels[6]);
+        assertEquals(0, output.pixels[0]);
+    }
+
+    @Test
+    public void engine_bandsMatchSingleThread() throws Exception {
+        Raster source = new Raster(301, 517);
+        Random random = new Random(3);
+        for (int i = 0; i < source.pixels.length; i++) {
+            source.pixels[i] = random.nextInt();
+        }
+        RasterOperation[] operations = {
+                RasterOperation.ROTATE_90, RasterOperation.FLIP_HORIZONTAL,
+                RasterOperation.FLIP_VERTICAL, RasterOperation.GRAYSCALE, RasterOperation.INVERT,
+                RasterOperation.scale(150, 700), RasterOperation.blur(3)
+        };
+        for (RasterOperation operation : operations) {
+            Raster single = apply(operation, source, 1);
+            Raster parallel = apply(operation, source, 4);
+            assertEquals(single.width, parallel.width);
+            assertArrayEquals(operation.getClass().getSimpleName(), single.pixels, parallel.pixels);
+        }
+    }
+
+    private static Raster apply(RasterOperation operation, Raster source, int threads)
+            throws Exception {
+        RasterOperationEngine engine = new RasterOperationEngine(threads);
+        try {
+            return engine.apply(operation, source);
+        } finally {
+            engine.shutdown();
+        }
+    }
+}
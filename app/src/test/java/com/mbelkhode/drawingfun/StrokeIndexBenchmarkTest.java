@@ -0,0 +1,212 @@
+package com.mbelkhode.drawingfun;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmarks stroke eraser hit tests, a StrokeIndex query around the finger followed by
+ * Stroke.isNear, on a full screen drawing of 100k freehand strokes, against going through every
+ * stroke. The timings are printed; the test fails if an indexed hit test takes a millisecond or
+ * more on average, or if queries allocate. A few hundred bytes of the JVM's own allocations can
+ * land in the measured loop, so less than a byte per query counts as none.
+ *
+ * It also benchmarks a whole eraser swipe the way DrawingView does it: every move event hit tests,
+ * takes the strokes out of the index and marks them as erased, and the list of strokes is
+ * compacted once when the finger is lifted. That is printed next to removing every erased stroke
+ * from the list on its own, without comparing the two as they are timed on a shared machine. The
+ * swipe fails if a move event takes a millisecond or more on average or if the move events
+ * allocate, again counting less than a byte per erased stroke as none.
+ */
+public class StrokeIndexBenchmarkTest {
+
+    private static final int WIDTH = 1440;
+    private static final int HEIGHT = 2560;
+    private static final int STROKES = 100000;
+    private static final int POINTS_PER_STROKE = 20;
+    private static final int HIT_TESTS = 10000;
+    private static final float RADIUS = 16;
+    private static final long MAX_AVERAGE_NANOS = 1000000L;
+    // The distance between two move events of the eraser swipe
+    private static final float ERASE_STEP = 8;
+
+    @Test
+    public void benchmark_hitTests() throws Exception {
+        Random random = new Random(6);
+        List<Stroke> strokes = randomStrokes(random);
+        long start = System.nanoTime();
+        StrokeIndex index = new StrokeIndex(WIDTH, HEIGHT);
+        for (Stroke stroke : strokes) {
+            index.add(stroke);
+        }
+        long buildNanos = System.nanoTime() - start;
+
+        float[] points = new float[HIT_TESTS * 2];
+        for (int i = 0; i < points.length; i += 2) {
+            points[i] = random.nextFloat() * WIDTH;
+            points[i + 1] = random.nextFloat() * HEIGHT;
+        }
+        List<Stroke> found = new ArrayList<>();
+        // Warm up, which also grows the result list and the index buffers to fit
+        int indexedHits = hitTestIndexed(index, points, found);
+        getAllocatedBytes();
+
+        long allocatedBefore = getAllocatedBytes();
+        start = System.nanoTime();
+        long worst = 0;
+        for (int i = 0; i < points.length; i += 2) {
+            long testStart = System.nanoTime();
+            found.clear();
+            index.query(points[i] - RADIUS, points[i + 1] - RADIUS, points[i] + RADIUS,
+                    points[i + 1] + RADIUS, found);
+            for (int j = 0; j < found.size(); j++) {
+                found.get(j).isNear(points[i], points[i + 1], RADIUS);
+            }
+            worst = Math.max(worst, System.nanoTime() - testStart);
+        }
+        long indexedNanos = (System.nanoTime() - start) / HIT_TESTS;
+        long allocated = getAllocatedBytes() - allocatedBefore;
+
+        start = System.nanoTime();
+        int linearHits = 0;
+        for (int i = 0; i < points.length; i += 2) {
+            for (Stroke stroke : strokes) {
+                if (stroke.isNear(points[i], points[i + 1], RADIUS)) {
+                    linearHits++;
+                }
+            }
+        }
+        long linearNanos = (System.nanoTime() - start) / HIT_TESTS;
+
+        System.out.println(String.format("%d strokes: index built in %.1f ms, hit test %.1f us "
+                        + "(worst %.1f us), every stroke %.1f us, %d bytes allocated",
+                STROKES, buildNanos / 1e6, indexedNanos / 1e3, worst / 1e3, linearNanos / 1e3,
+                allocated));
+        assertEquals(linearHits, indexedHits);
+        assertTrue("Hit tests are too slow", indexedNanos < MAX_AVERAGE_NANOS);
+        assertTrue("Queries allocated", allocated < HIT_TESTS);
+    }
+
+    @Test
+    public void benchmark_eraseSwipe() throws Exception {
+        List<Stroke> strokes = randomStrokes(new Random(7));
+        StrokeIndex index = new StrokeIndex(WIDTH, HEIGHT);
+        for (Stroke stroke : strokes) {
+            index.add(stroke);
+        }
+        List<Stroke> batched = new ArrayList<>(strokes);
+        List<Stroke> oneByOne = new ArrayList<>(strokes);
+        // Warm up the compaction, which removes nothing as no stroke is marked yet
+        for (int i = 0; i < 5; i++) {
+            Stroke.removeErased(batched, batched.size());
+        }
+
+        // A swipe across the middle of the drawing
+        float y = HEIGHT / 2;
+        List<Stroke> found = new ArrayList<>();
+        List<Stroke> erasedInOrder = new ArrayList<>(STROKES);
+        // Grow the result list and the index buffers to fit, as a hit test warm up does
+        index.query(0, 0, WIDTH, HEIGHT, found);
+        getAllocatedBytes();
+
+        int events = 0;
+        long worst = 0;
+        long allocatedBefore = getAllocatedBytes();
+        long start = System.nanoTime();
+        for (float x = 0; x < WIDTH; x += ERASE_STEP) {
+            long eventStart = System.nanoTime();
+            found.clear();
+            index.query(x - RADIUS, y - RADIUS, x + RADIUS, y + RADIUS, found);
+            for (int i = 0; i < found.size(); i++) {
+                Stroke stroke = found.get(i);
+                if (stroke.isNear(x, y, RADIUS)) {
+                    index.remove(stroke);
+                    stroke.markErased();
+                    erasedInOrder.add(stroke);
+                }
+            }
+            worst = Math.max(worst, System.nanoTime() - eventStart);
+            events++;
+        }
+        long eventNanos = (System.nanoTime() - start) / events;
+        long allocated = getAllocatedBytes() - allocatedBefore;
+
+        start = System.nanoTime();
+        Stroke.removeErased(batched, batched.size());
+        long batchedNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (Stroke stroke : erasedInOrder) {
+            oneByOne.remove(oneByOne.indexOf(stroke));
+        }
+        long oneByOneNanos = System.nanoTime() - start;
+
+        System.out.println(String.format("Erase swipe over %d strokes: %d events erased %d strokes,"
+                        + " %.1f us per event (worst %.1f us), %d bytes allocated, list compacted in"
+                        + " %.1f ms at the end, removing them one by one %.1f ms",
+                STROKES, events, erasedInOrder.size(), eventNanos / 1e3, worst / 1e3, allocated,
+                batchedNanos / 1e6, oneByOneNanos / 1e6));
+        assertFalse(erasedInOrder.isEmpty());
+        assertEquals(oneByOne, batched);
+        assertEquals(STROKES - erasedInOrder.size(), batched.size());
+        assertEquals(batched.size(), index.size());
+        assertTrue("Erase events are too slow", eventNanos < MAX_AVERAGE_NANOS);
+        assertTrue("Erase events allocated", allocated < erasedInOrder.size());
+    }
+
+    private static int hitTestIndexed(StrokeIndex index, float[] points, List<Stroke> found) {
+        int hits = 0;
+        for (int i = 0; i < points.length; i += 2) {
+            found.clear();
+            index.query(points[i] - RADIUS, points[i + 1] - RADIUS, points[i] + RADIUS,
+                    points[i + 1] + RADIUS, found);
+            for (int j = 0; j < found.size(); j++) {
+                if (found.get(j).isNear(points[i], points[i + 1], RADIUS)) {
+                    hits++;
+                }
+            }
+        }
+        return hits;
+    }
+
+    private static List<Stroke> randomStrokes(Random random) {
+        List<Stroke> strokes = new ArrayList<>();
+        for (int i = 0; i < STROKES; i++) {
+            strokes.add(randomStroke(random));
+        }
+        return strokes;
+    }
+
+    /**
+     * Returns a short random walk like a quick scribble, up to about 100 pixels long.
+     */
+    private static Stroke randomStroke(Random random) {
+        Stroke stroke = new Stroke(Stroke.TYPE_FREEHAND, 0xFF000000, 12);
+        float x = random.nextFloat() * WIDTH;
+        float y = random.nextFloat() * HEIGHT;
+        for (int i = 0; i < POINTS_PER_STROKE; i++) {
+            stroke.addPoint(x, y);
+            x += random.nextFloat() * 10 - 5;
+            y += random.nextFloat() * 10 - 5;
+        }
+        return stroke;
+    }
+
+    /**
+     * Returns the bytes allocated by this thread so far, or -1 if the JVM cannot tell.
+     */
+    private static long getAllocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,133 @@
+package com.mbelkhode.drawingfun;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the StrokeIndex grid, checked against going through every stroke.
+ */
+public class StrokeIndexTest {
+
+    private static final int WIDTH = 1000;
+    private static final int HEIGHT = 700;
+
+    @Test
+    public void query_findsOverlappingStrokesOnceInOrder() throws Exception {
+        StrokeIndex index = new StrokeIndex(WIDTH, HEIGHT);
+        // Covers many cells, so it must only be found once
+        Stroke big = line(10, 10, 900, 600);
+        Stroke small = line(100, 100, 110, 110);
+        Stroke far = line(800, 50, 820, 60);
+        index.add(big);
+        index.add(small);
+        index.add(far);
+
+        List<Stroke> found = new ArrayList<>();
+        index.query(90, 90, 120, 120, found);
+        assertEquals(Arrays.asList(big, small), found);
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    public void strokesOutsideTheDrawing_areFoundAtTheEdges() throws Exception {
+        StrokeIndex index = new StrokeIndex(WIDTH, HEIGHT);
+        Stroke outside = line(-50, -50, -20, -20);
+        Stroke beyond = line(WIDTH + 10, HEIGHT + 10, WIDTH + 40, HEIGHT + 40);
+        index.add(outside);
+        index.add(beyond);
+
+        List<Stroke> found = new ArrayList<>();
+        index.query(-40, -40, -30, -30, found);
+        assertEquals(Arrays.asList(outside), found);
+        found.clear();
+        index.query(WIDTH + 20, HEIGHT + 20, WIDTH + 30, HEIGHT + 30, found);
+        assertEquals(Arrays.asList(beyond), found);
+    }
+
+    @Test
+    public void remove_dropsTheStroke() throws Exception {
+        StrokeIndex index = new StrokeIndex(WIDTH, HEIGHT);
+        Stroke first = line(0, 0, 300, 300);
+        Stroke second = line(0, 300, 300, 0);
+        index.add(first);
+        index.add(second);
+
+        assertTrue(index.remove(first));
+        assertFalse(index.remove(first));
+        List<Stroke> found = new ArrayList<>();
+        index.query(0, 0, 300, 300, found);
+        assertEquals(Arrays.asList(second), found);
+        assertEquals(1, index.size());
+
+        index.clear();
+        found.clear();
+        index.query(0, 0, WIDTH, HEIGHT, found);
+        assertTrue(found.isEmpty());
+    }
+
+    @Test
+    public void randomAddsAndRemoves_matchGoingThroughAllStrokes() throws Exception {
+        StrokeIndex index = new StrokeIndex(WIDTH, HEIGHT);
+        List<Stroke> strokes = new ArrayList<>();
+        Random random = new Random(5);
+        for (int i = 0; i < 2000; i++) {
+            float x = random.nextFloat() * (WIDTH + 100) - 50;
+            float y = random.nextFloat() * (HEIGHT + 100) - 50;
+            Stroke stroke = line(x, y, x + random.nextFloat() * 200, y + random.nextFloat() * 200);
+            strokes.add(stroke);
+            index.add(stroke);
+            // Remove enough to make the index compact itself
+            if (random.nextInt(3) == 0) {
+                Stroke removed = strokes.remove(random.nextInt(strokes.size()));
+                assertTrue(index.remove(removed));
+            }
+        }
+        assertEquals(strokes.size(), index.size());
+
+        List<Stroke> found = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            float left = random.nextFloat() * WIDTH;
+            float top = random.nextFloat() * HEIGHT;
+            float right = left + random.nextFloat() * 100;
+            float bottom = top + random.nextFloat() * 100;
+            List<Stroke> expected = new ArrayList<>();
+            for (Stroke stroke : strokes) {
+                if (stroke.getLeft() <= right && stroke.getRight() >= left
+                        && stroke.getTop() <= bottom && stroke.getBottom() >= top) {
+                    expected.add(stroke);
+                }
+            }
+            found.clear();
+            index.query(left, top, right, bottom, found);
+            assertEquals(expected, found);
+        }
+    }
+
+    @Test
+    public void sort_sortsShortAndLongRuns() throws Exception {
+        Random random = new Random(9);
+        for (int count : new int[]{0, 1, 5, 32, 33, 500}) {
+            int[] numbers = new int[count + 3];
+            for (int i = 0; i < numbers.length; i++) {
+                numbers[i] = random.nextInt(1000);
+            }
+            int[] expected = Arrays.copyOf(numbers, numbers.length);
+            Arrays.sort(expected, 0, count);
+            StrokeIndex.sort(numbers, count);
+            assertArrayEquals(expected, numbers);
+        }
+    }
+
+    private static Stroke line(float x0, float y0, float x1, float y1) {
+        Stroke stroke = new Stroke(Stroke.TYPE_LINE, 0xFF000000, 4);
+        stroke.addPoint(x0, y0);
+        stroke.addPoint(x1, y1);
+        return stroke;
+    }
+}
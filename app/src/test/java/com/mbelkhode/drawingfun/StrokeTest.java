@@ -0,0 +1,102 @@
+package com.mbelkhode.drawingfun;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the Stroke points, bounds and hit testing.
+ */
+public class StrokeTest {
+
+    @Test
+    public void bounds_includeHalfTheWidth() throws Exception {
+        Stroke stroke = new Stroke(Stroke.TYPE_FREEHAND, 0xFF000000, 10);
+        stroke.addPoint(50, 60);
+        stroke.addPoint(20, 90);
+        stroke.addPoint(40, 70);
+        assertEquals(3, stroke.getPointCount());
+        assertEquals(15, stroke.getLeft(), 0);
+        assertEquals(55, stroke.getTop(), 0);
+        assertEquals(55, stroke.getRight(), 0);
+        assertEquals(95, stroke.getBottom(), 0);
+    }
+
+    @Test
+    public void shape_isBoundedByItsCorners() throws Exception {
+        // Dragged from the bottom right to the top left
+        Stroke stroke = new Stroke(Stroke.TYPE_ELLIPSE, 0xFF000000, 4);
+        stroke.addPoint(300, 200);
+        stroke.addPoint(100, 50);
+        assertEquals(Stroke.TYPE_ELLIPSE, stroke.getType());
+        assertEquals(98, stroke.getLeft(), 0);
+        assertEquals(48, stroke.getTop(), 0);
+        assertEquals(302, stroke.getRight(), 0);
+        assertEquals(202, stroke.getBottom(), 0);
+    }
+
+    @Test
+    public void addPoint_growsPastInitialCapacity() throws Exception {
+        Stroke stroke = new Stroke(Stroke.TYPE_FREEHAND, 0xFF000000, 1);
+        for (int i = 0; i < 1000; i++) {
+            stroke.addPoint(i, -i);
+        }
+        assertEquals(1000, stroke.getPointCount());
+        assertEquals(999, stroke.getX(999), 0);
+        assertEquals(-999, stroke.getY(999), 0);
+    }
+
+    @Test
+    public void isNear_followsTheLinesBetweenPoints() throws Exception {
+        Stroke stroke = new Stroke(Stroke.TYPE_FREEHAND, 0xFF000000, 10);
+        stroke.addPoint(0, 0);
+        stroke.addPoint(100, 0);
+        stroke.addPoint(100, 100);
+        assertTrue(stroke.isNear(50, 8, 4));
+        assertTrue(stroke.isNear(108, 50, 4));
+        assertFalse(stroke.isNear(50, 10, 4));
+        // Inside the bounds but away from the lines
+        assertFalse(stroke.isNear(40, 60, 4));
+    }
+
+    @Test
+    public void isNear_shapesOnlyHitTheirOutline() throws Exception {
+        Stroke rectangle = new Stroke(Stroke.TYPE_RECTANGLE, 0xFF000000, 2);
+        rectangle.addPoint(100, 100);
+        rectangle.addPoint(0, 0);
+        assertTrue(rectangle.isNear(0, 50, 1));
+        assertTrue(rectangle.isNear(50, 101, 1));
+        assertFalse(rectangle.isNear(50, 50, 1));
+
+        Stroke ellipse = new Stroke(Stroke.TYPE_ELLIPSE, 0xFF000000, 2);
+        ellipse.addPoint(0, 0);
+        ellipse.addPoint(200, 100);
+        assertTrue(ellipse.isNear(200, 50, 1));
+        assertTrue(ellipse.isNear(100, 0, 1));
+        assertFalse(ellipse.isNear(100, 50, 1));
+        assertFalse(ellipse.isNear(5, 5, 1));
+    }
+
+    @Test
+    public void removeErased_keepsTheOrderAndCountsEarlyRemovals() throws Exception {
+        List<Stroke> strokes = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            strokes.add(new Stroke(Stroke.TYPE_FREEHAND, 0xFF000000, i + 1));
+        }
+        List<Stroke> expected = Arrays.asList(strokes.get(1), strokes.get(2), strokes.get(4));
+        strokes.get(0).markErased();
+        strokes.get(3).markErased();
+        strokes.get(5).markErased();
+        assertTrue(strokes.get(0).isErased());
+        assertFalse(strokes.get(1).isErased());
+
+        assertEquals(2, Stroke.removeErased(strokes, 4));
+        assertEquals(expected, strokes);
+        assertEquals(0, Stroke.removeErased(strokes, 3));
+        assertEquals(expected, strokes);
+    }
+}
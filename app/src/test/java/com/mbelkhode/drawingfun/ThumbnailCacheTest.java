@@ -0,0 +1,25 @@
+package com.mbelkhode.drawingfun;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the ThumbnailCache sample size choice.
+ */
+public class ThumbnailCacheTest {
+
+    @Test
+    public void sampleSize_keepsThumbnailAtLeastRequestedSize() throws Exception {
+        assertEquals(1, ThumbnailCache.computeSampleSize(320, 180, 200));
+        assertEquals(1, ThumbnailCache.computeSampleSize(320, 180, 96));
+        assertEquals(2, ThumbnailCache.computeSampleSize(320, 240, 96));
+        assertEquals(4, ThumbnailCache.computeSampleSize(1600, 1200, 300));
+    }
+
+    @Test
+    public void sampleSize_neverBelowOne() throws Exception {
+        assertEquals(1, ThumbnailCache.computeSampleSize(10, 10, 96));
+        assertEquals(1, ThumbnailCache.computeSampleSize(0, 0, 96));
+    }
+}